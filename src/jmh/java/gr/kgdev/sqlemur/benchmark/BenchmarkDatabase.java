@@ -0,0 +1,98 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import gr.kgdev.sqlemur.core.SQLemur;
+import gr.kgdev.sqlemur.orm.Column;
+import gr.kgdev.sqlemur.orm.Table;
+
+/**
+ * Embedded H2 database seeded with the schema used by the benchmarks.
+ * Table bench_item has an id and 16 columns of mixed types, c1 to c16.
+ */
+public class BenchmarkDatabase {
+
+	public static final int MAX_COLUMNS = 16;
+
+	private static final String CREATE_TABLE = """
+			create table bench_item (
+				id int primary key,
+				c1 int, c2 bigint, c3 varchar(64), c4 double,
+				c5 int, c6 bigint, c7 varchar(64), c8 double,
+				c9 int, c10 bigint, c11 varchar(64), c12 double,
+				c13 decimal(12,2), c14 timestamp, c15 boolean, c16 varchar(64)
+			)""";
+
+	/**
+	 * Creates a SQLemur on a new in memory database with the given number of rows.
+	 * 
+	 * @param name database name, distinct per benchmark state
+	 * @param rows
+	 * @return
+	 * @throws SQLException
+	 */
+	public static SQLemur create(String name, int rows) throws SQLException {
+		var sqlemur = new SQLemur("org.h2.Driver", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		sqlemur.executeUpdate("drop table if exists bench_item");
+		sqlemur.executeUpdate(CREATE_TABLE);
+
+		var paramsRows = new ArrayList<List<Object>>(rows);
+		var now = System.currentTimeMillis();
+		for (var i = 0; i < rows; i++) {
+			paramsRows.add(List.of(i,
+					i, (long) i * 31, "value_" + i, i * 0.5,
+					i + 1, (long) i * 37, "other_" + i, i * 1.5,
+					i + 2, (long) i * 41, "third_" + i, i * 2.5,
+					BigDecimal.valueOf(i, 2), new Timestamp(now + i), i % 2 == 0, "last_" + i));
+		}
+		sqlemur.executeBatch("insert into bench_item values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)", paramsRows);
+		return sqlemur;
+	}
+
+	/**
+	 * Select of the first columns of bench_item.
+	 * 
+	 * @param columns
+	 * @return
+	 */
+	public static String select(int columns) {
+		var query = new StringBuilder("select id");
+		for (var i = 1; i <= columns; i++)
+			query.append(", c").append(i);
+		return query.append(" from bench_item where id < ?").toString();
+	}
+
+	@Table("bench_item")
+	public static class NarrowItem {
+		@Column("ID") Integer id;
+		@Column("C1") Integer c1;
+		@Column("C2") Long c2;
+		@Column("C3") String c3;
+		@Column("C4") Double c4;
+	}
+
+	@Table("bench_item")
+	public static class WideItem {
+		@Column("ID") Integer id;
+		@Column("C1") Integer c1;
+		@Column("C2") Long c2;
+		@Column("C3") String c3;
+		@Column("C4") Double c4;
+		@Column("C5") Integer c5;
+		@Column("C6") Long c6;
+		@Column("C7") String c7;
+		@Column("C8") Double c8;
+		@Column("C9") Integer c9;
+		@Column("C10") Long c10;
+		@Column("C11") String c11;
+		@Column("C12") Double c12;
+		@Column("C13") BigDecimal c13;
+		@Column("C14") Timestamp c14;
+		@Column("C15") Boolean c15;
+		@Column("C16") String c16;
+	}
+}
@@ -0,0 +1,60 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.kgdev.sqlemur.core.SQLemur;
+
+/**
+ * Parameter binding of mixed types, through a single row query so binding
+ * dominates the cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BindingBenchmark {
+
+	private static final String QUERY = "select id from bench_item where id = ? and c1 = ? and c2 = ? and c3 = ? "
+			+ "and c13 = ? and c14 < ? and c15 = ? and (? is null or c16 = ?) and ? is not null";
+
+	private SQLemur sqlemur;
+	private List<Object> params;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		sqlemur = BenchmarkDatabase.create("binding", 100);
+		params = Arrays.asList(10, 10, 310L, "value_10", new BigDecimal("0.10"),
+				new Timestamp(System.currentTimeMillis() + 60_000), true, null, "last_10", new byte[] { 1, 2, 3 });
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		sqlemur.close();
+	}
+
+	@Benchmark
+	public Map<String, Object> bindMixedTypes() throws SQLException {
+		return sqlemur.executeQueryToMap(QUERY, params);
+	}
+}
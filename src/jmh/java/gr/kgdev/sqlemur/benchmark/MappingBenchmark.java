@@ -0,0 +1,85 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.kgdev.sqlemur.columnar.ColumnFrame;
+import gr.kgdev.sqlemur.core.SQLemur;
+
+/**
+ * Map mode, camel case map mode and class mode mapping of executeQueryToList,
+ * along with columnar mode of executeQueryToColumns, at several row and column
+ * counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+	@Param({ "10", "1000", "10000" })
+	private int rows;
+
+	@Param({ "4", "16" })
+	private int columns;
+
+	private SQLemur sqlemur;
+	private SQLemur sqlemurCC;
+	private String query;
+	private List<Object> params;
+	private Class<?> clazz;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		sqlemur = BenchmarkDatabase.create("mapping", rows);
+		sqlemurCC = new SQLemur("org.h2.Driver", "jdbc:h2:mem:mapping;DB_CLOSE_DELAY=-1", "sa", "");
+		sqlemurCC.enableCcMode(true);
+		query = BenchmarkDatabase.select(columns);
+		params = List.of(rows);
+		clazz = columns == 4 ? BenchmarkDatabase.NarrowItem.class : BenchmarkDatabase.WideItem.class;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		sqlemurCC.close();
+		sqlemur.close();
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> mapMode() throws SQLException {
+		return sqlemur.executeQueryToList(query, params);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> mapModeCC() throws SQLException {
+		return sqlemurCC.executeQueryToList(query, params);
+	}
+
+	@Benchmark
+	public List<Object> classMode() throws SQLException {
+		return sqlemur.executeQueryToList(query, params, clazz);
+	}
+
+	@Benchmark
+	public ColumnFrame columnarMode() throws SQLException {
+		return sqlemur.executeQueryToColumns(query, params);
+	}
+}
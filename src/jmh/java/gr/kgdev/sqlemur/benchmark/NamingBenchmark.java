@@ -0,0 +1,45 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.kgdev.sqlemur.orm.ORMUtils;
+
+/**
+ * Column name conversions used by camel case mode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NamingBenchmark {
+
+	@Param({ "ID", "FIRST_NAME", "CUSTOMER_BILLING_ADDRESS_LINE" })
+	private String column;
+
+	private String camelCase;
+
+	@Benchmark
+	public String toCamelCase() {
+		return ORMUtils.toCamelCase(column);
+	}
+
+	@Benchmark
+	public String toSnakeCase() {
+		if (camelCase == null)
+			camelCase = ORMUtils.toCamelCase(column);
+		return ORMUtils.toSnakeCase(camelCase);
+	}
+}
@@ -0,0 +1,101 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.kgdev.sqlemur.pool.LemurDataSource;
+
+/**
+ * Borrow and return latency of dbcp2 against the built in lemur pool, with a
+ * single thread and with more threads than pooled connections.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PoolBorrowBenchmark {
+
+	private static final int POOL_SIZE = 8;
+
+	@Param({ "dbcp2", "lemur" })
+	private String pool;
+
+	private DataSource dataSource;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		var url = "jdbc:h2:mem:pool_" + pool + ";DB_CLOSE_DELAY=-1";
+		if (pool.equals("dbcp2")) {
+			var dbcp2DataSource = new BasicDataSource();
+			dbcp2DataSource.setDriverClassName("org.h2.Driver");
+			dbcp2DataSource.setUrl(url);
+			dbcp2DataSource.setUsername("sa");
+			dbcp2DataSource.setPassword("");
+			dbcp2DataSource.setInitialSize(POOL_SIZE);
+			dbcp2DataSource.setMaxIdle(POOL_SIZE);
+			dbcp2DataSource.setMaxTotal(POOL_SIZE);
+			dbcp2DataSource.setMaxWait(Duration.ofSeconds(10));
+			dataSource = dbcp2DataSource;
+		} else {
+			var lemurDataSource = new LemurDataSource();
+			lemurDataSource.setDriverClassName("org.h2.Driver");
+			lemurDataSource.setUrl(url);
+			lemurDataSource.setUsername("sa");
+			lemurDataSource.setPassword("");
+			lemurDataSource.setMinIdle(POOL_SIZE);
+			lemurDataSource.setMaxTotal(POOL_SIZE);
+			lemurDataSource.setMaxWait(Duration.ofSeconds(10));
+			dataSource = lemurDataSource;
+		}
+		// open connections before measuring
+		var connections = new Connection[POOL_SIZE];
+		for (var i = 0; i < POOL_SIZE; i++)
+			connections[i] = dataSource.getConnection();
+		for (var conn : connections)
+			conn.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (dataSource instanceof AutoCloseable closeable)
+			closeable.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean borrowRelease() throws SQLException {
+		try (var conn = dataSource.getConnection()) {
+			return conn.getAutoCommit();
+		}
+	}
+
+	@Benchmark
+	@Threads(32)
+	public boolean borrowReleaseContended() throws SQLException {
+		try (var conn = dataSource.getConnection()) {
+			return conn.getAutoCommit();
+		}
+	}
+}
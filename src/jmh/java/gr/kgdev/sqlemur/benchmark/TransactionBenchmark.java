@@ -0,0 +1,67 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gr.kgdev.sqlemur.core.SQLemur;
+
+/**
+ * Overhead of running an update inside transaction(...) against running it in
+ * auto commit mode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+
+	private static final String UPDATE = "update bench_item set c1 = c1 + 1 where id = ?";
+
+	private SQLemur sqlemur;
+	private List<Object> params;
+
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		sqlemur = BenchmarkDatabase.create("transaction", 100);
+		params = List.of(42);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		sqlemur.close();
+	}
+
+	@Benchmark
+	public int autoCommitUpdate() throws SQLException {
+		return sqlemur.executeUpdate(UPDATE, params);
+	}
+
+	@Benchmark
+	public void transactionUpdate() throws SQLException {
+		sqlemur.transaction(conn -> sqlemur.executeUpdate(conn, UPDATE, params));
+	}
+
+	@Benchmark
+	public void transactionFiveUpdates() throws SQLException {
+		sqlemur.transaction(conn -> {
+			for (var i = 0; i < 5; i++)
+				sqlemur.executeUpdate(conn, UPDATE, params);
+		});
+	}
+}
@@ -0,0 +1,311 @@
+package gr.kgdev.sqlemur.benchmark;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import gr.kgdev.sqlemur.benchmark.BenchmarkDatabase.WideItem;
+import gr.kgdev.sqlemur.core.Params;
+import gr.kgdev.sqlemur.core.RetryPolicy;
+import gr.kgdev.sqlemur.core.SQLemur;
+import gr.kgdev.sqlemur.metrics.LatencyHistogram;
+import gr.kgdev.sqlemur.utils.SQLemurConfig;
+import gr.kgdev.sqlemur.utils.SQLemurProperties;
+
+/**
+ * Runs a mix of reads, writes and transactions from concurrent clients against
+ * an embedded H2 database for a fixed duration, then reports throughput,
+ * latency percentiles per operation, pool wait and gc activity. Unlike the jmh
+ * benchmarks it exercises the pool, transactions and mapping together, so pool
+ * and config choices can be compared under saturation and contention.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@workload -Dworkload.args="--mix read=70,write=20,transaction=10 --clients 64 --threads virtual --pool lemur --pool-size 16 --duration 30s"
+ * </pre>
+ *
+ * Options:
+ * <ul>
+ * <li>--mix weights of read, write and transaction, default
+ * read=80,write=15,transaction=5</li>
+ * <li>--clients concurrent clients, default 16</li>
+ * <li>--threads platform or virtual client threads, default platform</li>
+ * <li>--duration measured time, ex 30s, 500ms or 2m, default 10s</li>
+ * <li>--warmup time run before measuring, default 3s</li>
+ * <li>--pool dbcp2 or lemur, default sqlemur.pool.type</li>
+ * <li>--pool-size max pooled connections, default sqlemur.pool.maxsize</li>
+ * <li>--rows rows of bench_item, default 10000</li>
+ * <li>--read-rows rows mapped per read, default 10</li>
+ * <li>--hot-rows rows updated by writes and transactions, fewer rows more
+ * contention, default all rows</li>
+ * <li>--config properties file of any other sqlemur settings</li>
+ * </ul>
+ */
+public class WorkloadRunner {
+
+	private static final String READ = BenchmarkDatabase.select(BenchmarkDatabase.MAX_COLUMNS).replace("where id < ?",
+			"where id >= ? and id < ?");
+	private static final String WRITE = "update bench_item set c1 = c1 + 1, c3 = ? where id = ?";
+	private static final String DEBIT = "update bench_item set c2 = c2 - ? where id = ?";
+	private static final String CREDIT = "update bench_item set c2 = c2 + ? where id = ?";
+
+	private enum Operation {
+		READ, WRITE, TRANSACTION
+	}
+
+	private final Map<String, String> options;
+	private final int[] weights = new int[Operation.values().length];
+	private final int totalWeight;
+	private final int clients;
+	private final boolean virtualThreads;
+	private final Duration duration;
+	private final Duration warmup;
+	private final int rows;
+	private final int readRows;
+	private final int hotRows;
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+	private final LongAdder[] errors = new LongAdder[Operation.values().length];
+	private final LatencyHistogram poolWait = new LatencyHistogram();
+	private volatile boolean measuring = false;
+	private volatile boolean stopped = false;
+	private volatile Exception firstError;
+	private SQLemur sqlemur;
+
+	private WorkloadRunner(Map<String, String> options) {
+		this.options = options;
+		for (var entry : options.getOrDefault("mix", "read=80,write=15,transaction=5").split(",")) {
+			var pair = entry.split("=");
+			if (pair.length != 2)
+				throw new IllegalArgumentException("Invalid mix entry " + entry + ", expected operation=weight");
+			weights[Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer
+					.parseInt(pair[1].trim());
+		}
+		var total = 0;
+		for (var weight : weights)
+			total += weight;
+		if (total <= 0)
+			throw new IllegalArgumentException("Mix must have a positive weight");
+		this.totalWeight = total;
+		this.clients = Integer.parseInt(options.getOrDefault("clients", "16"));
+		var threads = options.getOrDefault("threads", "platform");
+		switch (threads) {
+		case "platform":
+			this.virtualThreads = false;
+			break;
+		case "virtual":
+			this.virtualThreads = true;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown threads " + threads + ", expected platform or virtual");
+		}
+		this.duration = parseDuration(options.getOrDefault("duration", "10s"));
+		this.warmup = parseDuration(options.getOrDefault("warmup", "3s"));
+		this.rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+		this.readRows = Math.min(rows, Integer.parseInt(options.getOrDefault("read-rows", "10")));
+		this.hotRows = Math.min(rows, Integer.parseInt(options.getOrDefault("hot-rows", String.valueOf(rows))));
+		for (var i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+			errors[i] = new LongAdder();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		var options = new LinkedHashMap<String, String>();
+		for (var i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 == args.length)
+				throw new IllegalArgumentException("Invalid argument " + args[i] + ", expected --option value");
+			options.put(args[i].substring(2), args[++i]);
+		}
+		new WorkloadRunner(options).run();
+	}
+
+	private static Duration parseDuration(String value) {
+		value = value.trim().toLowerCase(Locale.ROOT);
+		if (value.endsWith("ms"))
+			return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+		if (value.endsWith("s"))
+			return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+		if (value.endsWith("m"))
+			return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+		return Duration.ofSeconds(Long.parseLong(value));
+	}
+
+	private void run() throws Exception {
+		configure();
+		sqlemur = BenchmarkDatabase.create("workload", rows);
+		sqlemur.addQueryListener(event -> {
+			// statements of a transaction run on its connection, acquired once
+			if (measuring && event.acquireNanos() > 0)
+				poolWait.record(event.acquireNanos());
+		});
+
+		var threads = new ArrayList<Thread>(clients);
+		for (var i = 0; i < clients; i++) {
+			var builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform();
+			threads.add(builder.name("workload-client-" + i).start(this::client));
+		}
+
+		Thread.sleep(warmup.toMillis());
+		var gcBefore = gcStats();
+		var start = System.nanoTime();
+		measuring = true;
+		Thread.sleep(duration.toMillis());
+		measuring = false;
+		var elapsed = System.nanoTime() - start;
+		var gcAfter = gcStats();
+		stopped = true;
+		for (var thread : threads)
+			thread.join();
+
+		report(elapsed, gcBefore, gcAfter);
+	}
+
+	/**
+	 * Sets the given config file and pool options over any sqlemur.properties
+	 * file, pool options taking precedence.
+	 */
+	private void configure() throws IOException {
+		if (options.containsKey("config")) {
+			var config = new Properties();
+			try (var reader = Files.newBufferedReader(Path.of(options.get("config")))) {
+				config.load(reader);
+			}
+			for (var name : config.stringPropertyNames())
+				SQLemurProperties.override(name, config.getProperty(name));
+		}
+		if (options.containsKey("pool"))
+			SQLemurProperties.override(SQLemurConfig.POOL_TYPE.getName(), options.get("pool"));
+		if (options.containsKey("pool-size")) {
+			var size = options.get("pool-size");
+			SQLemurProperties.override(SQLemurConfig.POOL_MAX_SIZE.getName(), size);
+			SQLemurProperties.override(SQLemurConfig.POOL_IDLE_SIZE.getName(), size);
+			SQLemurProperties.override(SQLemurConfig.POOL_INITIAL_SIZE.getName(), size);
+		}
+	}
+
+	private void client() {
+		var random = ThreadLocalRandom.current();
+		while (!stopped) {
+			var operation = next(random);
+			var start = System.nanoTime();
+			var failed = false;
+			try {
+				switch (operation) {
+				case READ:
+					var from = random.nextInt(rows - readRows + 1);
+					List<WideItem> items = sqlemur.executeQueryToList(READ,
+							Params.of(2).bind(from).bind(from + readRows), WideItem.class);
+					if (items.size() != readRows)
+						throw new IllegalStateException("Read " + items.size() + " rows, expected " + readRows);
+					break;
+				case WRITE:
+					sqlemur.executeUpdate(WRITE, Params.of(2).bind("written_" + start).bind(random.nextInt(hotRows)));
+					break;
+				case TRANSACTION:
+					// unordered updates of two hot rows, so transactions may deadlock and retry
+					var debited = random.nextInt(hotRows);
+					var credited = random.nextInt(hotRows);
+					var amount = random.nextInt(1, 100);
+					sqlemur.transaction(conn -> {
+						sqlemur.executeUpdate(conn, DEBIT, Params.of(2).bind(amount).bind(debited));
+						sqlemur.executeUpdate(conn, CREDIT, Params.of(2).bind(amount).bind(credited));
+					}, RetryPolicy.defaults());
+					break;
+				}
+			} catch (SQLException | RuntimeException e) {
+				failed = true;
+				if (firstError == null)
+					firstError = e;
+			}
+			if (measuring) {
+				if (failed)
+					errors[operation.ordinal()].increment();
+				else
+					latencies[operation.ordinal()].record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private Operation next(ThreadLocalRandom random) {
+		var pick = random.nextInt(totalWeight);
+		for (var operation : Operation.values()) {
+			pick -= weights[operation.ordinal()];
+			if (pick < 0)
+				return operation;
+		}
+		throw new IllegalStateException();
+	}
+
+	private static Map<String, long[]> gcStats() {
+		var stats = new LinkedHashMap<String, long[]>();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			stats.put(gc.getName(), new long[] { gc.getCollectionCount(), gc.getCollectionTime() });
+		return stats;
+	}
+
+	private void report(long elapsedNanos, Map<String, long[]> gcBefore, Map<String, long[]> gcAfter) {
+		var seconds = elapsedNanos / 1e9;
+		var config = SQLemurProperties.snapshot();
+		System.out.printf(Locale.ROOT, "%nWorkload %s, %d %s clients, %s pool of %d, %d rows (%d hot), %ss after %ss warmup%n",
+				options.getOrDefault("mix", "read=80,write=15,transaction=5"), clients,
+				virtualThreads ? "virtual" : "platform", config.get(SQLemurConfig.POOL_TYPE),
+				config.get(SQLemurConfig.POOL_MAX_SIZE), rows, hotRows, duration.toMillis() / 1000.0,
+				warmup.toMillis() / 1000.0);
+
+		System.out.printf(Locale.ROOT, "%n%-12s %10s %10s %8s %10s %10s %10s %10s %10s%n", "operation", "ops",
+				"ops/s", "errors", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+		var totalCount = 0L;
+		var totalErrors = 0L;
+		for (var operation : Operation.values()) {
+			if (weights[operation.ordinal()] == 0)
+				continue;
+			var snapshot = latencies[operation.ordinal()].snapshot();
+			var failed = errors[operation.ordinal()].sum();
+			printRow(operation.name().toLowerCase(Locale.ROOT), snapshot, failed, seconds);
+			totalCount += snapshot.count();
+			totalErrors += failed;
+		}
+		System.out.printf(Locale.ROOT, "%-12s %10d %10.0f %8d%n", "total", totalCount, totalCount / seconds,
+				totalErrors);
+		if (firstError != null)
+			System.out.println("first error: " + firstError);
+
+		var wait = poolWait.snapshot();
+		System.out.printf(Locale.ROOT, "%n%-12s %10s %10s %8s %10s %10s %10s %10s %10s%n", "pool wait", "borrows",
+				"", "", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+		System.out.printf(Locale.ROOT, "%-12s %10d %10s %8s %10.1f %10.1f %10.1f %10.1f %10.1f%n", "", wait.count(), "",
+				"", micros(wait.mean()), micros(wait.p50()), micros(wait.p99()), micros(wait.p999()),
+				micros(wait.max()));
+
+		System.out.printf(Locale.ROOT, "%n%-24s %12s %12s%n", "gc", "collections", "time(ms)");
+		for (var entry : gcAfter.entrySet()) {
+			var before = gcBefore.getOrDefault(entry.getKey(), new long[2]);
+			System.out.printf(Locale.ROOT, "%-24s %12d %12d%n", entry.getKey(), entry.getValue()[0] - before[0],
+					entry.getValue()[1] - before[1]);
+		}
+		var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		System.out.printf(Locale.ROOT, "heap used %dMB of %dMB committed%n", heap.getUsed() >> 20,
+				heap.getCommitted() >> 20);
+	}
+
+	private static void printRow(String name, LatencyHistogram.Snapshot snapshot, long errors, double seconds) {
+		System.out.printf(Locale.ROOT, "%-12s %10d %10.0f %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+				snapshot.count(), snapshot.count() / seconds, errors, micros(snapshot.mean()), micros(snapshot.p50()),
+				micros(snapshot.p99()), micros(snapshot.p999()), micros(snapshot.max()));
+	}
+
+	private static double micros(long nanos) {
+		return nanos / 1000.0;
+	}
+}
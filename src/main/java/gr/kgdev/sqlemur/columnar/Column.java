@@ -0,0 +1,106 @@
+package gr.kgdev.sqlemur.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Values of a result set column. Values are stored in chunks of 4096 rows, so
+ * growing a column never copies the values read so far. Nulls are kept in a
+ * bitmap per chunk, allocated on the first null of the chunk, so primitive
+ * columns never box their values.
+ */
+public abstract class Column {
+
+	static final int CHUNK_SHIFT = 12;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// first chunk starts small and doubles up to full size, so small results stay small
+	static final int FIRST_CHUNK_SIZE = 64;
+
+	private final String name;
+	private final int sqlType;
+	private long[][] nulls = new long[0][];
+	private int nullCount = 0;
+	protected int size = 0;
+
+	protected Column(String name, int sqlType) {
+		this.name = name;
+		this.sqlType = sqlType;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the type of column as reported by result set metadata.
+	 * 
+	 * @return one of {@link java.sql.Types}
+	 */
+	public int getSqlType() {
+		return sqlType;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getNullCount() {
+		return nullCount;
+	}
+
+	public boolean isNull(int row) {
+		checkRow(row);
+		var chunk = row >>> CHUNK_SHIFT;
+		return chunk < nulls.length && nulls[chunk] != null
+				&& (nulls[chunk][(row & CHUNK_MASK) >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the value of the given row boxed, or null.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public abstract Object getObject(int row);
+
+	/**
+	 * Appends the value of the given column of the current row of result set.
+	 * 
+	 * @param rset
+	 * @param index
+	 * @throws SQLException
+	 */
+	abstract void read(ResultSet rset, int index) throws SQLException;
+
+	/**
+	 * Shrinks last chunk to the number of rows read.
+	 */
+	abstract void trim();
+
+	protected void setNull(int row) {
+		var chunk = row >>> CHUNK_SHIFT;
+		if (chunk >= nulls.length)
+			nulls = Arrays.copyOf(nulls, chunk + 1);
+		if (nulls[chunk] == null)
+			nulls[chunk] = new long[CHUNK_SIZE / 64];
+		nulls[chunk][(row & CHUNK_MASK) >>> 6] |= 1L << row;
+		nullCount++;
+	}
+
+	protected int lastChunkSize() {
+		var remainder = size & CHUNK_MASK;
+		return remainder == 0 && size > 0 ? CHUNK_SIZE : remainder;
+	}
+
+	protected void checkRow(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row " + row + " out of " + size + " rows of column " + name);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + name + ", " + size + " rows]";
+	}
+}
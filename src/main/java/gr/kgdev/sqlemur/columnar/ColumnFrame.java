@@ -0,0 +1,173 @@
+package gr.kgdev.sqlemur.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import gr.kgdev.sqlemur.orm.ORMUtils;
+
+/**
+ * Result set stored by column. Column types are resolved once from result set
+ * metadata: integer, bigint, floating point and boolean columns (and decimals
+ * without scale fitting a long) are kept in primitive arrays, every other
+ * column in an object array.
+ */
+public class ColumnFrame {
+
+	private final List<Column> columns;
+	private final HashMap<String, Column> columnsByName;
+	private final int size;
+
+	private ColumnFrame(List<Column> columns, int size) {
+		this.columns = Collections.unmodifiableList(columns);
+		this.columnsByName = new HashMap<>(columns.size() * 2);
+		for (var column : columns)
+			columnsByName.putIfAbsent(column.getName(), column);
+		this.size = size;
+	}
+
+	/**
+	 * Reads all remaining rows of result set. Columns are named by their aliases,
+	 * converted to camel case if requested. When two columns share a name, the
+	 * second one is disambiguated with its table name.
+	 * 
+	 * @param rset
+	 * @param camelCase
+	 * @return
+	 * @throws SQLException
+	 */
+	public static ColumnFrame read(ResultSet rset, boolean camelCase) throws SQLException {
+		var rsmd = rset.getMetaData();
+		var columns = new ArrayList<Column>(rsmd.getColumnCount());
+		var names = new HashMap<String, Integer>();
+		for (var i = 1; i <= rsmd.getColumnCount(); i++) {
+			var label = rsmd.getColumnLabel(i);
+			var name = camelCase ? ORMUtils.toCamelCase(label) : label;
+			if (names.containsKey(name))
+				name = camelCase ? name + " (" + rsmd.getTableName(i) + ")" : rsmd.getTableName(i) + "." + name;
+			names.put(name, i);
+			columns.add(column(rsmd, i, name));
+		}
+
+		var reading = columns.toArray(new Column[0]);
+		var size = 0;
+		while (rset.next()) {
+			for (var i = 0; i < reading.length; i++)
+				reading[i].read(rset, i + 1);
+			size++;
+		}
+		for (var column : reading)
+			column.trim();
+		return new ColumnFrame(columns, size);
+	}
+
+	private static Column column(ResultSetMetaData rsmd, int index, String name) throws SQLException {
+		var type = rsmd.getColumnType(index);
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			return new IntColumn(name, type);
+		case Types.BIGINT:
+			return new LongColumn(name, type);
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return new DoubleColumn(name, type);
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return new BooleanColumn(name, type);
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			// precision 0 is reported by some drivers for unbounded numerics
+			var precision = rsmd.getPrecision(index);
+			if (rsmd.getScale(index) == 0 && precision > 0 && precision <= 9)
+				return new IntColumn(name, type);
+			if (rsmd.getScale(index) == 0 && precision > 0 && precision <= 18)
+				return new LongColumn(name, type);
+			return new ObjectColumn(name, type);
+		default:
+			return new ObjectColumn(name, type);
+		}
+	}
+
+	/**
+	 * Returns the number of rows.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	public Column getColumn(int index) {
+		return columns.get(index);
+	}
+
+	/**
+	 * Returns the column of the given name.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IllegalArgumentException if there is no such column
+	 */
+	public Column getColumn(String name) {
+		var column = columnsByName.get(name);
+		if (column == null)
+			throw new IllegalArgumentException("No column " + name + ", columns are " + columnsByName.keySet());
+		return column;
+	}
+
+	public IntColumn getIntColumn(String name) {
+		return getColumn(name, IntColumn.class);
+	}
+
+	public LongColumn getLongColumn(String name) {
+		return getColumn(name, LongColumn.class);
+	}
+
+	public DoubleColumn getDoubleColumn(String name) {
+		return getColumn(name, DoubleColumn.class);
+	}
+
+	public BooleanColumn getBooleanColumn(String name) {
+		return getColumn(name, BooleanColumn.class);
+	}
+
+	public ObjectColumn getObjectColumn(String name) {
+		return getColumn(name, ObjectColumn.class);
+	}
+
+	private <C extends Column> C getColumn(String name, Class<C> clazz) {
+		var column = getColumn(name);
+		if (!clazz.isInstance(column))
+			throw new IllegalArgumentException(
+					"Column " + name + " is " + column.getClass().getSimpleName() + ", not " + clazz.getSimpleName());
+		return clazz.cast(column);
+	}
+
+	/**
+	 * Returns the value of the given row and column boxed, or null.
+	 * 
+	 * @param row
+	 * @param name
+	 * @return
+	 */
+	public Object getObject(int row, String name) {
+		return getColumn(name).getObject(row);
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnFrame[" + size + " rows, " + columns + "]";
+	}
+}
@@ -0,0 +1,71 @@
+package gr.kgdev.sqlemur.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Column of long values.
+ */
+public final class LongColumn extends Column {
+
+	private long[][] chunks = new long[1][];
+
+	LongColumn(String name, int sqlType) {
+		super(name, sqlType);
+	}
+
+	/**
+	 * Returns the value of the given row, 0 if it is null.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public long getLong(int row) {
+		checkRow(row);
+		return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns a copy of values, nulls are 0.
+	 * 
+	 * @return
+	 */
+	public long[] toArray() {
+		var array = new long[size];
+		for (var offset = 0; offset < size; offset += CHUNK_SIZE)
+			System.arraycopy(chunks[offset >>> CHUNK_SHIFT], 0, array, offset, Math.min(CHUNK_SIZE, size - offset));
+		return array;
+	}
+
+	@Override
+	public Object getObject(int row) {
+		return isNull(row) ? null : getLong(row);
+	}
+
+	@Override
+	void read(ResultSet rset, int index) throws SQLException {
+		var chunk = size >>> CHUNK_SHIFT;
+		var offset = size & CHUNK_MASK;
+		if (chunk == chunks.length)
+			chunks = Arrays.copyOf(chunks, chunk * 2);
+		var values = chunks[chunk];
+		if (values == null) {
+			values = new long[chunk == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE];
+			chunks[chunk] = values;
+		} else if (offset == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+			chunks[chunk] = values;
+		}
+		values[offset] = rset.getLong(index);
+		if (rset.wasNull())
+			setNull(size);
+		size++;
+	}
+
+	@Override
+	void trim() {
+		if (size > 0)
+			chunks[(size - 1) >>> CHUNK_SHIFT] = Arrays.copyOf(chunks[(size - 1) >>> CHUNK_SHIFT], lastChunkSize());
+	}
+}
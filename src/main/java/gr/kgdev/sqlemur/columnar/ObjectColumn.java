@@ -0,0 +1,73 @@
+package gr.kgdev.sqlemur.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Column of values without a primitive representation, ex strings, decimals
+ * and dates, as returned by {@link ResultSet#getObject(int)}.
+ */
+public final class ObjectColumn extends Column {
+
+	private Object[][] chunks = new Object[1][];
+
+	ObjectColumn(String name, int sqlType) {
+		super(name, sqlType);
+	}
+
+	/**
+	 * Returns the value of the given row cast to the expected type.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(int row) {
+		return (T) getObject(row);
+	}
+
+	/**
+	 * Returns a copy of values.
+	 * 
+	 * @return
+	 */
+	public Object[] toArray() {
+		var array = new Object[size];
+		for (var offset = 0; offset < size; offset += CHUNK_SIZE)
+			System.arraycopy(chunks[offset >>> CHUNK_SHIFT], 0, array, offset, Math.min(CHUNK_SIZE, size - offset));
+		return array;
+	}
+
+	@Override
+	public Object getObject(int row) {
+		checkRow(row);
+		return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+	}
+
+	@Override
+	void read(ResultSet rset, int index) throws SQLException {
+		var chunk = size >>> CHUNK_SHIFT;
+		var offset = size & CHUNK_MASK;
+		if (chunk == chunks.length)
+			chunks = Arrays.copyOf(chunks, chunk * 2);
+		var values = chunks[chunk];
+		if (values == null) {
+			values = new Object[chunk == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE];
+			chunks[chunk] = values;
+		} else if (offset == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+			chunks[chunk] = values;
+		}
+		values[offset] = rset.getObject(index);
+		if (values[offset] == null)
+			setNull(size);
+		size++;
+	}
+
+	@Override
+	void trim() {
+		if (size > 0)
+			chunks[(size - 1) >>> CHUNK_SHIFT] = Arrays.copyOf(chunks[(size - 1) >>> CHUNK_SHIFT], lastChunkSize());
+	}
+}
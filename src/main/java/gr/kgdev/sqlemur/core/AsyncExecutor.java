@@ -0,0 +1,118 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs database work on virtual threads. At most maxConcurrency tasks run at
+ * the same time (normally the pool max size), so virtual threads wait here in
+ * fifo order instead of piling up on the pool. Tasks waiting for a slot are
+ * bounded by maxQueueDepth, further submissions fail fast.
+ */
+public class AsyncExecutor implements AutoCloseable {
+
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Semaphore permits;
+	private final int maxConcurrency;
+	private final int maxQueueDepth;
+	// running plus waiting tasks
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	public AsyncExecutor(int maxConcurrency, int maxQueueDepth) {
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.maxConcurrency = maxConcurrency;
+		this.maxQueueDepth = maxQueueDepth;
+	}
+
+	/**
+	 * Submits task for execution. If queue is full returned future is already
+	 * completed with a {@link SQLTransientConnectionException}, if executor is
+	 * closed with an {@link IllegalStateException}.
+	 * 
+	 * @param <T>
+	 * @param task
+	 * @return
+	 */
+	public <T> CompletableFuture<T> submit(SqlCallable<T> task) {
+		if (closed)
+			return CompletableFuture.failedFuture(new IllegalStateException("Async executor is closed"));
+		if (inFlight.incrementAndGet() > maxConcurrency + maxQueueDepth) {
+			inFlight.decrementAndGet();
+			return CompletableFuture.failedFuture(new SQLTransientConnectionException(
+					"Async queue is full, " + maxQueueDepth + " tasks are already waiting for a connection"));
+		}
+
+		var future = new CompletableFuture<T>();
+		try {
+			executor.execute(() -> run(task, future));
+		} catch (RuntimeException e) {
+			inFlight.decrementAndGet();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private <T> void run(SqlCallable<T> task, CompletableFuture<T> future) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			inFlight.decrementAndGet();
+			future.completeExceptionally(e);
+			return;
+		}
+		try {
+			if (closed)
+				future.completeExceptionally(new IllegalStateException("Async executor is closed"));
+			else
+				future.complete(task.call());
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+		} finally {
+			permits.release();
+			inFlight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of tasks currently running.
+	 * 
+	 * @return
+	 */
+	public int getActive() {
+		return Math.max(0, maxConcurrency - permits.availablePermits());
+	}
+
+	/**
+	 * Returns the number of tasks waiting for a free slot.
+	 * 
+	 * @return
+	 */
+	public int getQueued() {
+		return Math.max(0, inFlight.get() - getActive());
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Rejects further submissions and fails waiting tasks without running them.
+	 * Running tasks are left to complete.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		// wakes waiting tasks, they fail on the closed check
+		permits.release(maxQueueDepth);
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,136 @@
+package gr.kgdev.sqlemur.core;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit of transactions running at the same time, adjusted by
+ * additive increase, multiplicative decrease (AIMD): every committed
+ * transaction raises the limit by 1 / limit, about one per limit commits, and
+ * every transaction aborted because of contention lowers it by a ratio. When
+ * deadlocks and serialization failures start, fewer transactions compete for
+ * the same rows, so more of them commit. The limit is only raised while it is
+ * actually used, so it does not drift up while load is low.
+ */
+public class ConcurrencyLimiter {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private double limit;
+	private int inFlight;
+	private long committed;
+	private long aborted;
+
+	/**
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @param backoffRatio ratio of limit kept on every abort, ex 0.9
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+			throw new IllegalArgumentException(
+					"Invalid limits " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+		if (backoffRatio <= 0 || backoffRatio >= 1)
+			throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * Waits until fewer transactions than the limit are running.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void acquire() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (inFlight >= (int) limit)
+				available.await();
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Releases a slot taken by {@link #acquire()}, adjusting the limit by the
+	 * outcome of the transaction.
+	 *
+	 * @param outcome
+	 */
+	public void release(Outcome outcome) {
+		lock.lock();
+		try {
+			switch (outcome) {
+			case COMMITTED:
+				committed++;
+				if (inFlight * 2 >= limit)
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				break;
+			case ABORTED:
+				aborted++;
+				limit = Math.max(minLimit, limit * backoffRatio);
+				break;
+			default:
+				break;
+			}
+			inFlight--;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getCommitted() {
+		lock.lock();
+		try {
+			return committed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getAborted() {
+		lock.lock();
+		try {
+			return aborted;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Outcome of a limited transaction.
+	 */
+	public enum Outcome {
+		COMMITTED,
+		/** rolled back because of contention, lowers the limit */
+		ABORTED,
+		/** failed for any other reason, leaves the limit as is */
+		FAILED
+	}
+}
@@ -0,0 +1,513 @@
+package gr.kgdev.sqlemur.core;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports a CSV file into a table. The file is memory mapped and split into
+ * chunks ending at line breaks outside of quotes, which are parsed by workers
+ * running on virtual threads. Each worker binds the fields of a record straight
+ * to the parameters of its own insert statement, converted by the type of their
+ * column, and inserts them in jdbc batches on its own connection. Records which
+ * can not be converted, and batches which fail, are rejected without stopping
+ * the import; batches are isolated by savepoints, or committed one by one if
+ * the driver does not support savepoints. Any other failure stops the import,
+ * rows committed so far are kept.
+ */
+final class CsvImport {
+
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	private final Path path;
+	private final String table;
+	private final Map<String, String> columnMapping;
+	private final byte delimiter;
+	private final int batchSize;
+	private final int commitInterval;
+	private final int parallelism;
+	private final int chunkSize;
+	private final ImportProgress progress;
+	private final SqlCallable<Connection> connections;
+
+	private final AtomicLong inserted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	private FileChannel channel;
+	private long size;
+	private int fieldCount;
+	// parameter index of every field of a record, -1 for fields not imported
+	private int[] targets;
+	private int[] types;
+	private String insertQuery;
+
+	// state of splitting into chunks, guarded by this
+	private long position;
+	private boolean quoted;
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	CsvImport(Path path, String table, Map<String, String> columnMapping, ImportOptions options, int batchSize,
+			int commitInterval, int parallelism, SqlCallable<Connection> connections) {
+		this.path = path;
+		this.table = table;
+		this.columnMapping = columnMapping == null ? Collections.emptyMap() : columnMapping;
+		this.delimiter = (byte) options.getDelimiter();
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+		this.parallelism = parallelism;
+		this.chunkSize = options.getChunkSize();
+		this.progress = options.getProgress();
+		this.connections = connections;
+	}
+
+	String getInsertQuery() {
+		return insertQuery;
+	}
+
+	ImportResult run(QueryTrace trace) throws SQLException {
+		var start = System.nanoTime();
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			this.channel = channel;
+			this.size = channel.size();
+			resolveColumns(readHeader());
+			trace.rename(insertQuery);
+
+			var chunks = Math.max(1, (size - position + chunkSize - 1) / chunkSize);
+			var workers = new ArrayList<Thread>();
+			for (var i = 0; i < Math.min(parallelism, chunks); i++)
+				workers.add(Thread.ofVirtual().name("sqlemur-import-" + i).start(new Worker()));
+			for (var worker : workers)
+				worker.join();
+		} catch (IOException e) {
+			throw new SQLException("Could not read " + path + ": " + e.getMessage(), e);
+		} catch (InterruptedException e) {
+			failure.compareAndSet(null, e);
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while importing " + path, e);
+		}
+
+		trace.executed();
+		trace.updated(inserted.get());
+		var error = failure.get();
+		if (error instanceof SQLException e)
+			throw e;
+		if (error instanceof RuntimeException e)
+			throw e;
+		if (error != null)
+			throw new SQLException("Could not import " + path + ": " + error.getMessage(), error);
+		return new ImportResult(inserted.get(), rejected.get(), Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	private List<String> readHeader() throws IOException, SQLException {
+		var records = new Records();
+		records.reset(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, chunkSize)));
+		// utf-8 byte order mark
+		if (records.limit >= 3 && records.buffer.get(0) == (byte) 0xef && records.buffer.get(1) == (byte) 0xbb
+				&& records.buffer.get(2) == (byte) 0xbf)
+			records.position = 3;
+
+		var header = new ArrayList<String>();
+		var last = false;
+		while (!last) {
+			last = records.field();
+			header.add(new String(records.bytes, 0, records.length, StandardCharsets.UTF_8).trim());
+		}
+		if (records.position == records.limit && records.limit < size)
+			throw new SQLException("Header of " + path + " is longer than chunk size");
+		if (header.size() == 1 && header.get(0).isEmpty())
+			throw new SQLException("File " + path + " has no header");
+		position = records.position;
+		bytesRead.set(position);
+		return header;
+	}
+
+	private void resolveColumns(List<String> header) throws SQLException {
+		fieldCount = header.size();
+		targets = new int[fieldCount];
+		var columns = new ArrayList<String>();
+		for (var i = 0; i < fieldCount; i++) {
+			var column = columnMapping.isEmpty() ? header.get(i) : columnMapping.get(header.get(i));
+			targets[i] = column == null ? -1 : columns.size();
+			if (column != null)
+				columns.add(column);
+		}
+		for (var field : columnMapping.keySet()) {
+			if (!header.contains(field))
+				throw new SQLException("Field " + field + " not found in header of " + path);
+		}
+		if (columns.isEmpty())
+			throw new SQLException("No field of " + path + " is mapped to a column");
+
+		// columns types are read from an empty result set of the table
+		var joined = String.join(",", columns);
+		types = new int[columns.size()];
+		try (var conn = connections.call();
+				var statement = conn.createStatement();
+				var rset = statement.executeQuery("select " + joined + " from " + table + " where 1 = 0")) {
+			var rsmd = rset.getMetaData();
+			for (var i = 0; i < types.length; i++)
+				types[i] = rsmd.getColumnType(i + 1);
+		}
+		insertQuery = "insert into " + table + " (" + joined + ") values ("
+				+ String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+	}
+
+	/**
+	 * Returns the next chunk to parse as {start, end}, or null when file is
+	 * exhausted or import failed. Chunks end after the first line break outside
+	 * of quotes following chunk size bytes, quotes are tracked from the start of
+	 * file so line breaks of quoted fields do not split records.
+	 */
+	private synchronized long[] nextChunk() throws IOException {
+		if (position >= size || failure.get() != null)
+			return null;
+		var start = position;
+		var target = Math.min(start + chunkSize, size);
+		var end = start;
+		while (end < size) {
+			var b = byteAt(end++);
+			if (b == '"')
+				quoted = !quoted;
+			else if (b == '\n' && !quoted && end >= target)
+				break;
+		}
+		position = end;
+		return new long[] { start, end };
+	}
+
+	private byte byteAt(long offset) throws IOException {
+		if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+			windowStart = offset;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, size - offset));
+		}
+		return window.get((int) (offset - windowStart));
+	}
+
+	private void fail(Throwable t) {
+		failure.compareAndSet(null, t);
+	}
+
+	/**
+	 * Parser of the records of a chunk. Fields are unquoted into a reused buffer.
+	 */
+	private class Records {
+
+		private MappedByteBuffer buffer;
+		private int position;
+		private int limit;
+		private byte[] bytes = new byte[256];
+		private int length;
+		private boolean fieldQuoted;
+		private char[] chars = new char[64];
+
+		private void reset(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+			this.position = 0;
+			this.limit = buffer.limit();
+		}
+
+		/**
+		 * Parses the next field into buffer. Returns true if it is the last field of
+		 * its record.
+		 */
+		private boolean field() {
+			length = 0;
+			fieldQuoted = position < limit && buffer.get(position) == '"';
+			if (fieldQuoted) {
+				position++;
+				while (position < limit) {
+					var b = buffer.get(position++);
+					if (b == '"') {
+						if (position < limit && buffer.get(position) == '"')
+							position++;
+						else
+							break;
+					}
+					append(b);
+				}
+			}
+			// text following a closing quote is kept, as most parsers do
+			var unquoted = length;
+			while (position < limit) {
+				var b = buffer.get(position++);
+				if (b == delimiter)
+					return false;
+				if (b == '\n') {
+					if (length > unquoted && bytes[length - 1] == '\r')
+						length--;
+					return true;
+				}
+				append(b);
+			}
+			if (length > unquoted && bytes[length - 1] == '\r')
+				length--;
+			return true;
+		}
+
+		private void append(byte b) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, length * 2);
+			bytes[length++] = b;
+		}
+
+		private long parseLong() {
+			if (length == 0)
+				throw new NumberFormatException("Empty number");
+			var negative = bytes[0] == '-';
+			var i = negative || bytes[0] == '+' ? 1 : 0;
+			if (i == length)
+				throw new NumberFormatException("Invalid number " + ascii());
+			var value = 0L;
+			for (; i < length; i++) {
+				var digit = bytes[i] - '0';
+				if (digit < 0 || digit > 9)
+					throw new NumberFormatException("Invalid number " + ascii());
+				value = Math.addExact(Math.multiplyExact(value, 10), negative ? -digit : digit);
+			}
+			return value;
+		}
+
+		private boolean parseBoolean() {
+			var value = ascii().trim();
+			if (value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("t")
+					|| value.equalsIgnoreCase("yes"))
+				return true;
+			if (value.equalsIgnoreCase("false") || value.equals("0") || value.equalsIgnoreCase("f")
+					|| value.equalsIgnoreCase("no"))
+				return false;
+			throw new IllegalArgumentException("Invalid boolean " + value);
+		}
+
+		private BigDecimal parseDecimal() {
+			if (chars.length < length)
+				chars = new char[Math.max(length, chars.length * 2)];
+			for (var i = 0; i < length; i++)
+				chars[i] = (char) (bytes[i] & 0xff);
+			return new BigDecimal(chars, 0, length);
+		}
+
+		private String ascii() {
+			return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+		}
+
+		private String text() {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		private final Records records = new Records();
+		private Connection conn;
+		private PreparedStatement statement;
+		private boolean savepoints;
+		private int batchRows;
+		private int batchRejected;
+		private Exception batchError;
+		private long uncommitted;
+		private int reportedPosition;
+
+		@Override
+		public void run() {
+			try (var conn = connections.call()) {
+				var autoCommit = conn.getAutoCommit();
+				try (var statement = conn.prepareStatement(insertQuery)) {
+					this.conn = conn;
+					this.statement = statement;
+					this.savepoints = conn.getMetaData().supportsSavepoints();
+					conn.setAutoCommit(false);
+					long[] chunk;
+					while ((chunk = nextChunk()) != null && failure.get() == null) {
+						records.reset(channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]));
+						reportedPosition = 0;
+						parse();
+						bytesRead.addAndGet(records.position - reportedPosition);
+						reportedPosition = records.position;
+					}
+					if (failure.get() == null) {
+						flush();
+						conn.commit();
+					} else {
+						conn.rollback();
+					}
+				} catch (Throwable t) {
+					fail(t);
+					try {
+						conn.rollback();
+					} catch (SQLException e) {
+						t.addSuppressed(e);
+					}
+				} finally {
+					conn.setAutoCommit(autoCommit);
+				}
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+		private void parse() throws SQLException {
+			while (records.position < records.limit && failure.get() == null) {
+				var fields = 0;
+				Exception error = null;
+				var last = false;
+				while (!last) {
+					last = records.field();
+					if (fields < fieldCount && targets[fields] >= 0 && error == null) {
+						try {
+							bind(targets[fields]);
+						} catch (SQLException | RuntimeException e) {
+							error = e;
+						}
+					}
+					fields++;
+				}
+				// blank lines are skipped
+				if (fields == 1 && records.length == 0 && !records.fieldQuoted)
+					continue;
+				if (error == null && fields != fieldCount)
+					error = new IllegalArgumentException("Expected " + fieldCount + " fields but found " + fields);
+
+				if (error == null) {
+					statement.addBatch();
+					batchRows++;
+				} else {
+					batchRejected++;
+					batchError = error;
+				}
+				if (batchRows + batchRejected >= batchSize)
+					flush();
+			}
+		}
+
+		private void bind(int target) throws SQLException {
+			var index = target + 1;
+			var type = types[target];
+			if (records.length == 0 && !(records.fieldQuoted && isText(type))) {
+				statement.setNull(index, type);
+				return;
+			}
+			switch (type) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				statement.setInt(index, Math.toIntExact(records.parseLong()));
+				break;
+			case Types.BIGINT:
+				statement.setLong(index, records.parseLong());
+				break;
+			case Types.BOOLEAN:
+			case Types.BIT:
+				statement.setBoolean(index, records.parseBoolean());
+				break;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				statement.setDouble(index, Double.parseDouble(records.ascii()));
+				break;
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				statement.setBigDecimal(index, records.parseDecimal());
+				break;
+			case Types.DATE:
+				statement.setDate(index, Date.valueOf(records.ascii().trim()));
+				break;
+			case Types.TIME:
+				statement.setTime(index, Time.valueOf(records.ascii().trim()));
+				break;
+			case Types.TIMESTAMP:
+				statement.setTimestamp(index, Timestamp.valueOf(records.ascii().trim().replace('T', ' ')));
+				break;
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				// as written by ResultSetExporter
+				statement.setBytes(index, Base64.getDecoder().decode(Arrays.copyOf(records.bytes, records.length)));
+				break;
+			default:
+				statement.setString(index, records.text());
+			}
+		}
+
+		private void release(Savepoint savepoint) throws SQLException {
+			try {
+				conn.releaseSavepoint(savepoint);
+			} catch (SQLFeatureNotSupportedException e) {
+				// released on commit
+			}
+		}
+
+		private boolean isText(int type) {
+			return type == Types.CHAR || type == Types.VARCHAR || type == Types.LONGVARCHAR || type == Types.NCHAR
+					|| type == Types.NVARCHAR || type == Types.LONGNVARCHAR || type == Types.CLOB;
+		}
+
+		private void flush() throws SQLException {
+			if (batchRows == 0 && batchRejected == 0)
+				return;
+			var batchInserted = 0L;
+			if (batchRows > 0) {
+				var savepoint = savepoints ? conn.setSavepoint() : null;
+				try {
+					statement.executeBatch();
+					batchInserted = batchRows;
+					if (savepoint != null)
+						release(savepoint);
+				} catch (BatchUpdateException e) {
+					// rows of batch which did not fail are rolled back too, drivers differ on
+					// whether they go on after a failing row
+					if (savepoint != null)
+						conn.rollback(savepoint);
+					else
+						conn.rollback();
+					batchRejected += batchRows;
+					batchError = e;
+				} finally {
+					statement.clearBatch();
+				}
+				uncommitted += batchInserted;
+				if (!savepoints || uncommitted >= commitInterval) {
+					conn.commit();
+					uncommitted = 0;
+				}
+			}
+
+			var totalInserted = inserted.addAndGet(batchInserted);
+			var totalRejected = rejected.addAndGet(batchRejected);
+			var totalRead = bytesRead.addAndGet(records.position - reportedPosition);
+			reportedPosition = records.position;
+			if (progress != null)
+				progress.onBatch(new ImportBatch(batchInserted, batchRejected, batchError, totalInserted,
+						totalRejected, totalRead, size));
+			batchRows = 0;
+			batchRejected = 0;
+			batchError = null;
+		}
+	}
+}
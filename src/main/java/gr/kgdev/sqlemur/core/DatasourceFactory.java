@@ -1,27 +1,112 @@
 package gr.kgdev.sqlemur.core;
 
+import java.sql.SQLException;
 import java.time.Duration;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 
+import gr.kgdev.sqlemur.pool.LemurDataSource;
+import gr.kgdev.sqlemur.utils.SQLemurConfig;
 import gr.kgdev.sqlemur.utils.SQLemurProperties;
 
 public class DatasourceFactory {
 
+	/**
+	 * Creates the pool implementation selected by sqlemur.pool.type property,
+	 * dbcp2 (default) or lemur.
+	 * 
+	 */
+	public static DataSource createDatasource(String driver, String url, String user, String password) {
+		var type = SQLemurProperties.get(SQLemurConfig.POOL_TYPE);
+		switch (type.trim().toLowerCase()) {
+		case "dbcp2":
+			return createDbcp2Datasource(driver, url, user, password);
+		case "lemur":
+			return createLemurDatasource(driver, url, user, password);
+		default:
+			throw new IllegalArgumentException("Unknown sqlemur.pool.type " + type + ", expected dbcp2 or lemur");
+		}
+	}
+
 	public static DataSource createDbcp2Datasource(String driver, String url, String user, String password) {
 		var dbcp2DataSource = new BasicDataSource();
 		dbcp2DataSource.setDriverClassName(driver);
 		dbcp2DataSource.setUrl(url);
 		dbcp2DataSource.setUsername(user);
 		dbcp2DataSource.setPassword(password);
-		dbcp2DataSource.setInitialSize((Integer) SQLemurProperties.getProperty("sqlemur.pool.initialsize", Integer.class, 4));
-		dbcp2DataSource.setMaxIdle((Integer) SQLemurProperties.getProperty("sqlemur.pool.idlesize", Integer.class, 16));
-		dbcp2DataSource.setMaxTotal((Integer) SQLemurProperties.getProperty("sqlemur.pool.maxsize", Integer.class, 32));
-		var maxWaitMillis = (Integer) SQLemurProperties.getProperty("sqlemur.pool.maxwaitmillis", Integer.class, 10000);
-		dbcp2DataSource.setMaxWait(Duration.ofMillis(maxWaitMillis));
+		dbcp2DataSource.setInitialSize(SQLemurProperties.get(SQLemurConfig.POOL_INITIAL_SIZE));
+		// lets statement cache reach physical connections, so cached statements outlive a single borrow
+		dbcp2DataSource.setAccessToUnderlyingConnectionAllowed(true);
+		applyPoolSettings(dbcp2DataSource);
 		return dbcp2DataSource;
 	}
-	
+
+	public static DataSource createLemurDatasource(String driver, String url, String user, String password) {
+		var lemurDataSource = new LemurDataSource();
+		lemurDataSource.setDriverClassName(driver);
+		lemurDataSource.setUrl(url);
+		lemurDataSource.setUsername(user);
+		lemurDataSource.setPassword(password);
+		applyPoolSettings(lemurDataSource);
+		return lemurDataSource;
+	}
+
+	/**
+	 * Applies the current pool properties to a pool created by this factory. Size
+	 * and wait settings take effect on running pools, so pools can be resized
+	 * after properties are reloaded. Other data sources are left as is.
+	 * 
+	 * @param dataSource
+	 */
+	public static void applyPoolSettings(DataSource dataSource) {
+		var config = SQLemurProperties.snapshot();
+		if (dataSource instanceof BasicDataSource dbcp2DataSource) {
+			dbcp2DataSource.setMaxIdle(config.get(SQLemurConfig.POOL_IDLE_SIZE));
+			dbcp2DataSource.setMaxTotal(config.get(SQLemurConfig.POOL_MAX_SIZE));
+			dbcp2DataSource.setMaxWait(Duration.ofMillis(config.get(SQLemurConfig.POOL_MAX_WAIT_MILLIS)));
+		} else if (dataSource instanceof LemurDataSource lemurDataSource) {
+			lemurDataSource.setMaxWait(Duration.ofMillis(config.get(SQLemurConfig.POOL_MAX_WAIT_MILLIS)));
+			lemurDataSource.setMaxLifetime(Duration.ofMillis(config.get(SQLemurConfig.POOL_MAX_LIFETIME_MILLIS)));
+			lemurDataSource.setLeakDetectionThreshold(
+					Duration.ofMillis(config.get(SQLemurConfig.POOL_LEAK_DETECTION_MILLIS)));
+			lemurDataSource.setMaxTotal(config.get(SQLemurConfig.POOL_MAX_SIZE));
+			lemurDataSource.setMinIdle(config.get(SQLemurConfig.POOL_INITIAL_SIZE));
+		}
+	}
+
+	/**
+	 * Returns max connections of a pool created by this factory, or -1 if it is
+	 * unlimited or not known.
+	 * 
+	 * @param dataSource
+	 * @return
+	 */
+	public static int getMaxPoolSize(DataSource dataSource) {
+		if (dataSource instanceof BasicDataSource dbcp2DataSource)
+			return dbcp2DataSource.getMaxTotal() > 0 ? dbcp2DataSource.getMaxTotal() : -1;
+		if (dataSource instanceof LemurDataSource lemurDataSource)
+			return lemurDataSource.getMaxTotal();
+		return -1;
+	}
+
+	/**
+	 * Closes a pool created by this factory, or any closeable data source. Other
+	 * data sources are left as is.
+	 * 
+	 * @param dataSource
+	 * @throws SQLException
+	 */
+	public static void close(DataSource dataSource) throws SQLException {
+		if (!(dataSource instanceof AutoCloseable closeable))
+			return;
+		try {
+			closeable.close();
+		} catch (SQLException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SQLException("Could not close data source", e);
+		}
+	}
 }
@@ -0,0 +1,26 @@
+package gr.kgdev.sqlemur.core;
+
+/**
+ * A batch of an import, along with the totals of the import when it completed.
+ *
+ * @param inserted      rows of batch inserted
+ * @param rejected      rows of batch rejected, because they could not be parsed
+ *                      or because batch failed
+ * @param error         the last error of batch, null if no row was rejected
+ * @param totalInserted rows inserted by all batches so far
+ * @param totalRejected rows rejected by all batches so far
+ * @param bytesRead     bytes of file parsed so far
+ * @param bytesTotal    size of file
+ */
+public record ImportBatch(long inserted, long rejected, Exception error, long totalInserted, long totalRejected,
+		long bytesRead, long bytesTotal) {
+
+	/**
+	 * Returns the fraction of file parsed so far, from 0 to 1.
+	 *
+	 * @return
+	 */
+	public double progress() {
+		return bytesTotal == 0 ? 1 : (double) bytesRead / bytesTotal;
+	}
+}
@@ -0,0 +1,152 @@
+package gr.kgdev.sqlemur.core;
+
+/**
+ * Options of {@link SQLemur#importFile(java.nio.file.Path, String, java.util.Map, ImportOptions)}.
+ * Every option returns a copy, ex
+ * {@code ImportOptions.defaults().delimiter(';').batchSize(5000)}.
+ */
+public class ImportOptions {
+
+	private static final ImportOptions DEFAULTS = new ImportOptions(',', 0, 0, 0, 8 * 1024 * 1024, null);
+
+	private final char delimiter;
+	private final int batchSize;
+	private final int commitInterval;
+	private final int parallelism;
+	private final int chunkSize;
+	private final ImportProgress progress;
+
+	private ImportOptions(char delimiter, int batchSize, int commitInterval, int parallelism, int chunkSize,
+			ImportProgress progress) {
+		this.delimiter = delimiter;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+		this.progress = progress;
+	}
+
+	/**
+	 * Returns options with comma delimiter, sqlemur.batch.size rows per batch, a
+	 * commit every 10 batches, a worker per processor (leaving a quarter of the
+	 * pool to other callers) and 8MB chunks.
+	 *
+	 * @return
+	 */
+	public static ImportOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Returns a copy separating fields with the given delimiter, which must be an
+	 * ascii char other than quote.
+	 *
+	 * @param delimiter
+	 * @return
+	 */
+	public ImportOptions delimiter(char delimiter) {
+		if (delimiter >= 0x80 || delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+			throw new IllegalArgumentException("Invalid delimiter " + delimiter);
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	/**
+	 * Returns a copy inserting the given number of rows per jdbc batch.
+	 *
+	 * @param batchSize
+	 * @return
+	 */
+	public ImportOptions batchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	/**
+	 * Returns a copy committing after at least the given number of rows inserted
+	 * by a worker. Commits happen between batches.
+	 *
+	 * @param commitInterval
+	 * @return
+	 */
+	public ImportOptions commitInterval(int commitInterval) {
+		if (commitInterval < 1)
+			throw new IllegalArgumentException("Commit interval must be positive");
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	/**
+	 * Returns a copy parsing and inserting with the given number of workers, each
+	 * holding a pooled connection.
+	 *
+	 * @param parallelism
+	 * @return
+	 */
+	public ImportOptions parallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive");
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	/**
+	 * Returns a copy splitting file into chunks of about the given number of
+	 * bytes, the unit of work of workers.
+	 *
+	 * @param chunkSize
+	 * @return
+	 */
+	public ImportOptions chunkSize(int chunkSize) {
+		if (chunkSize < 1 || chunkSize > 1 << 30)
+			throw new IllegalArgumentException("Chunk size must be between 1 byte and 1GB");
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	/**
+	 * Returns a copy reporting every batch to the given listener.
+	 *
+	 * @param progress
+	 * @return
+	 */
+	public ImportOptions progress(ImportProgress progress) {
+		return new ImportOptions(delimiter, batchSize, commitInterval, parallelism, chunkSize, progress);
+	}
+
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Returns rows per batch, 0 for the default.
+	 *
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Returns rows per commit, 0 for the default.
+	 *
+	 * @return
+	 */
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Returns the number of workers, 0 for the default.
+	 *
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public ImportProgress getProgress() {
+		return progress;
+	}
+}
@@ -0,0 +1,12 @@
+package gr.kgdev.sqlemur.core;
+
+/**
+ * Notified by {@link SQLemur#importFile(java.nio.file.Path, String, java.util.Map, ImportOptions)}
+ * after every batch. Batches of different workers are reported concurrently,
+ * so implementations must be thread safe.
+ */
+@FunctionalInterface
+public interface ImportProgress {
+
+	public void onBatch(ImportBatch batch);
+}
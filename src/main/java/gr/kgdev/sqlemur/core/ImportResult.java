@@ -0,0 +1,13 @@
+package gr.kgdev.sqlemur.core;
+
+import java.time.Duration;
+
+/**
+ * Outcome of an import.
+ *
+ * @param inserted rows inserted
+ * @param rejected rows rejected
+ * @param elapsed  duration of import
+ */
+public record ImportResult(long inserted, long rejected, Duration elapsed) {
+}
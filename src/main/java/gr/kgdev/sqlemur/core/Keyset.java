@@ -0,0 +1,129 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keys and page size of a keyset paginated query, run by
+ * {@link SQLemur#paginate(String, List, Keyset)}. Instead of skipping rows with
+ * an offset, every page continues after the keys of the last row of the
+ * previous one, so deep pages are as fast as the first one given an index on
+ * the keys. The query is run as
+ * {@code select * from (query) p where keys after last row order by keys limit ?},
+ * keys must be selected by the query, be non null and identify a row.
+ */
+public class Keyset {
+
+	private final List<String> columns;
+	private final boolean[] descending;
+	private final int pageSize;
+	private final String limitClause;
+	private final String orderBy;
+	private final String after;
+
+	private Keyset(List<String> columns, boolean[] descending, int pageSize, String limitClause) {
+		this.columns = Collections.unmodifiableList(columns);
+		this.descending = descending;
+		this.pageSize = pageSize;
+		this.limitClause = limitClause;
+
+		var orderBy = new StringBuilder();
+		for (var i = 0; i < columns.size(); i++)
+			orderBy.append(i > 0 ? ", " : "").append(columns.get(i)).append(descending[i] ? " desc" : "");
+		this.orderBy = orderBy.toString();
+
+		// expanded form of (k1, k2) > (?, ?), which also works with mixed directions:
+		// k1 > ? or (k1 = ? and k2 > ?)
+		var after = new StringBuilder();
+		for (var i = 0; i < columns.size(); i++) {
+			after.append(i > 0 ? " or (" : "(");
+			for (var j = 0; j < i; j++)
+				after.append(columns.get(j)).append(" = ? and ");
+			after.append(columns.get(i)).append(descending[i] ? " < ?" : " > ?").append(")");
+		}
+		this.after = after.toString();
+	}
+
+	/**
+	 * Creates a keyset of the given keys, ex "created_at desc", "id". Keys are
+	 * ascending unless followed by desc. Qualifiers are dropped (ex o.id is id),
+	 * as keys are columns of the outer query.
+	 *
+	 * @param pageSize
+	 * @param keys
+	 * @return
+	 */
+	public static Keyset of(int pageSize, String... keys) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be positive");
+		if (keys.length == 0)
+			throw new IllegalArgumentException("Keyset needs at least one key");
+		var columns = new ArrayList<String>(keys.length);
+		var descending = new boolean[keys.length];
+		for (var i = 0; i < keys.length; i++) {
+			var parts = keys[i].trim().split("\\s+");
+			if (parts.length > 2 || parts.length == 2 && !parts[1].equalsIgnoreCase("asc")
+					&& !parts[1].equalsIgnoreCase("desc"))
+				throw new IllegalArgumentException("Invalid key " + keys[i]);
+			columns.add(parts[0].substring(parts[0].lastIndexOf('.') + 1));
+			descending[i] = parts.length == 2 && parts[1].equalsIgnoreCase("desc");
+		}
+		return new Keyset(columns, descending, pageSize, "limit ?");
+	}
+
+	/**
+	 * Returns a copy limiting pages with the given clause, which takes page size
+	 * as its only parameter, ex "fetch first ? rows only" for databases without
+	 * limit. Defaults to "limit ?".
+	 *
+	 * @param limitClause
+	 * @return
+	 */
+	public Keyset limitClause(String limitClause) {
+		if (limitClause.chars().filter(c -> c == '?').count() != 1)
+			throw new IllegalArgumentException("Limit clause must have a single parameter");
+		return new Keyset(columns, descending, pageSize, limitClause);
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	String query(String query, boolean first) {
+		return "select * from (" + query + ") p" + (first ? "" : " where " + after) + " order by " + orderBy + " "
+				+ limitClause;
+	}
+
+	List<Object> params(List<Object> params, Object[] keys) {
+		var all = new ArrayList<Object>(params.size() + columns.size() * (columns.size() + 1) / 2 + 1);
+		all.addAll(params);
+		if (keys != null) {
+			for (var i = 0; i < columns.size(); i++) {
+				for (var j = 0; j <= i; j++)
+					all.add(keys[j]);
+			}
+		}
+		all.add(pageSize);
+		return all;
+	}
+
+	/**
+	 * Reads the keys of the current row, which continue the next page.
+	 */
+	Object[] keys(ResultSet rset) throws SQLException {
+		var keys = new Object[columns.size()];
+		for (var i = 0; i < keys.length; i++) {
+			keys[i] = rset.getObject(columns.get(i));
+			if (keys[i] == null)
+				throw new SQLException("Key " + columns.get(i) + " of keyset paginated query is null");
+		}
+		return keys;
+	}
+}
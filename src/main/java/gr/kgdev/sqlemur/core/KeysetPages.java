@@ -0,0 +1,125 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy pages of a keyset paginated query. When a page is returned, the next one
+ * is already fetched on a virtual thread with its own pooled connection, so it
+ * is usually ready by the time the caller is done with the current one. It
+ * throws unchecked exceptions.
+ *
+ * @param <T>
+ */
+public final class KeysetPages<T> implements Iterator<List<T>>, AutoCloseable {
+
+	private final PageQuery<T> query;
+	private CompletableFuture<Page<T>> next;
+	private Page<T> ready;
+	private boolean closed = false;
+
+	KeysetPages(PageQuery<T> query) {
+		this.query = query;
+		this.next = fetch(null);
+	}
+
+	private CompletableFuture<Page<T>> fetch(Object[] keys) {
+		var page = new CompletableFuture<Page<T>>();
+		Thread.ofVirtual().name("sqlemur-page-prefetch").start(() -> {
+			try {
+				page.complete(query.fetch(keys));
+			} catch (Throwable t) {
+				page.completeExceptionally(t);
+			}
+		});
+		return page;
+	}
+
+	/**
+	 * Waits for the next page to be fetched, if it is not already. A last page
+	 * without rows is not returned.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		if (ready == null && next != null) {
+			var page = next;
+			next = null;
+			ready = await(page);
+		}
+		return ready != null && !ready.rows().isEmpty();
+	}
+
+	/**
+	 * Returns the next page, starting to fetch the one following it.
+	 */
+	@Override
+	public List<T> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		var page = ready;
+		ready = null;
+		if (page.keys() != null)
+			next = fetch(page.keys());
+		return page.rows();
+	}
+
+	private Page<T> await(CompletableFuture<Page<T>> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for page", e);
+		} catch (CancellationException e) {
+			throw new RuntimeException("Keyset paginated query was closed", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the rows of all remaining pages as a lazy stream, which closes this
+	 * on close.
+	 *
+	 * @return
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+				.flatMap(List::stream).onClose(this::close);
+	}
+
+	/**
+	 * Stops fetching pages. A page being fetched runs to completion and is
+	 * discarded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (next != null)
+			next.cancel(false);
+		next = null;
+		ready = null;
+	}
+
+	/**
+	 * Rows of a page, along with the keys of the page following it, null if it is
+	 * the last page.
+	 */
+	record Page<T>(List<T> rows, Object[] keys) {
+	}
+
+	@FunctionalInterface
+	interface PageQuery<T> {
+		Page<T> fetch(Object[] keys) throws SQLException;
+	}
+}
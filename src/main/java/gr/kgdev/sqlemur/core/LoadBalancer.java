@@ -0,0 +1,96 @@
+package gr.kgdev.sqlemur.core;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the replica serving the next read.
+ */
+@FunctionalInterface
+public interface LoadBalancer {
+
+	/**
+	 * @param replicas healthy replicas, never empty
+	 * @return one of replicas
+	 */
+	public Replica choose(List<Replica> replicas);
+
+	/**
+	 * Returns the balancer named by sqlemur.replica.loadbalancer property values:
+	 * roundrobin, leastinflight or latency.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static LoadBalancer of(String name) {
+		switch (name.trim().toLowerCase()) {
+		case "roundrobin":
+			return roundRobin();
+		case "leastinflight":
+			return leastInFlight();
+		case "latency":
+			return latencyWeighted();
+		default:
+			throw new IllegalArgumentException(
+					"Unknown load balancer " + name + ", expected roundrobin, leastinflight or latency");
+		}
+	}
+
+	public static LoadBalancer roundRobin() {
+		var next = new AtomicInteger();
+		return replicas -> replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+	}
+
+	/**
+	 * Chooses the replica with the fewest borrowed connections, ties are broken
+	 * randomly.
+	 *
+	 * @return
+	 */
+	public static LoadBalancer leastInFlight() {
+		return replicas -> {
+			var offset = ThreadLocalRandom.current().nextInt(replicas.size());
+			Replica least = null;
+			for (var i = 0; i < replicas.size(); i++) {
+				var replica = replicas.get((offset + i) % replicas.size());
+				if (least == null || replica.getInFlight() < least.getInFlight())
+					least = replica;
+			}
+			return least;
+		};
+	}
+
+	/**
+	 * Chooses replicas randomly, weighted by the inverse of their latency. Replicas
+	 * without latency yet are weighted as the fastest one.
+	 *
+	 * @return
+	 */
+	public static LoadBalancer latencyWeighted() {
+		return replicas -> {
+			var fastest = Double.MAX_VALUE;
+			for (var replica : replicas) {
+				if (replica.getLatencyNanos() > 0)
+					fastest = Math.min(fastest, replica.getLatencyNanos());
+			}
+			if (fastest == Double.MAX_VALUE)
+				return replicas.get(ThreadLocalRandom.current().nextInt(replicas.size()));
+
+			var weights = new double[replicas.size()];
+			var total = 0d;
+			for (var i = 0; i < weights.length; i++) {
+				var latency = replicas.get(i).getLatencyNanos();
+				weights[i] = 1 / (latency > 0 ? latency : fastest);
+				total += weights[i];
+			}
+			var point = ThreadLocalRandom.current().nextDouble(total);
+			for (var i = 0; i < weights.length; i++) {
+				point -= weights[i];
+				if (point < 0)
+					return replicas.get(i);
+			}
+			return replicas.get(weights.length - 1);
+		};
+	}
+}
@@ -0,0 +1,57 @@
+package gr.kgdev.sqlemur.core;
+
+/**
+ * OUT or INOUT param of a procedure call, placed among the other params of
+ * {@link SQLemur#callProcedure(String, java.util.List, Class...)} at its position. Its
+ * value after the call is read by {@link ProcedureResult#getOut(int)}.
+ *
+ * <pre>
+ * var result = sqlemur.callProcedure("transfer", List.of(from, to, amount, OutParam.of(Types.DECIMAL)));
+ * BigDecimal balance = result.getOut(4);
+ * </pre>
+ */
+public final class OutParam {
+
+	private final int sqlType;
+	private final Object value;
+	private final boolean in;
+
+	private OutParam(int sqlType, Object value, boolean in) {
+		this.sqlType = sqlType;
+		this.value = value;
+		this.in = in;
+	}
+
+	/**
+	 * Creates an OUT param of the given sql type, see {@link java.sql.Types}.
+	 *
+	 * @param sqlType
+	 * @return
+	 */
+	public static OutParam of(int sqlType) {
+		return new OutParam(sqlType, null, false);
+	}
+
+	/**
+	 * Creates an INOUT param of the given sql type, passing the given value in.
+	 *
+	 * @param value
+	 * @param sqlType
+	 * @return
+	 */
+	public static OutParam inOut(Object value, int sqlType) {
+		return new OutParam(sqlType, value, true);
+	}
+
+	public int getSqlType() {
+		return sqlType;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public boolean isIn() {
+		return in;
+	}
+}
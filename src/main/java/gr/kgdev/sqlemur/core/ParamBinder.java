@@ -0,0 +1,22 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds params of a type to prepared statements, registered by
+ * {@link ParamBinders#register(Class, ParamBinder)}.
+ *
+ * @param <T>
+ */
+@FunctionalInterface
+public interface ParamBinder<T> {
+
+	/**
+	 * @param statement
+	 * @param index     starting from 1
+	 * @param value     never null
+	 * @throws SQLException
+	 */
+	public void bind(PreparedStatement statement, int index, T value) throws SQLException;
+}
@@ -0,0 +1,146 @@
+package gr.kgdev.sqlemur.core;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the binders of param types. The binder of a class is resolved
+ * once, on its first bind, so binding costs a lookup and a typed setter
+ * instead of a driver inferring the type from setObject. Built in binders use
+ * setLong, setInt, setDouble, setBigDecimal, setTimestamp, setBytes etc and
+ * stream {@link InputStream} and {@link Reader} params, so large lobs are not
+ * held in memory. Types without a binder are bound by setObject.
+ */
+public class ParamBinders {
+
+	private static final Map<Class<?>, ParamBinder<?>> BUILT_IN = new IdentityHashMap<>();
+	private static final Map<Class<?>, ParamBinder<?>> registered = new LinkedHashMap<>();
+	private static volatile ClassValue<ParamBinder<Object>> binders = newBinders();
+
+	static {
+		builtIn(String.class, (statement, index, value) -> statement.setString(index, value));
+		builtIn(Long.class, (statement, index, value) -> statement.setLong(index, value));
+		builtIn(Integer.class, (statement, index, value) -> statement.setInt(index, value));
+		builtIn(Short.class, (statement, index, value) -> statement.setShort(index, value));
+		builtIn(Byte.class, (statement, index, value) -> statement.setByte(index, value));
+		builtIn(Double.class, (statement, index, value) -> statement.setDouble(index, value));
+		builtIn(Float.class, (statement, index, value) -> statement.setFloat(index, value));
+		builtIn(Boolean.class, (statement, index, value) -> statement.setBoolean(index, value));
+		builtIn(BigDecimal.class, (statement, index, value) -> statement.setBigDecimal(index, value));
+		builtIn(byte[].class, (statement, index, value) -> statement.setBytes(index, value));
+		builtIn(Timestamp.class, (statement, index, value) -> statement.setTimestamp(index, value));
+		builtIn(java.sql.Date.class, (statement, index, value) -> statement.setDate(index, value));
+		builtIn(Time.class, (statement, index, value) -> statement.setTime(index, value));
+		builtIn(java.util.Date.class,
+				(statement, index, value) -> statement.setTimestamp(index, new Timestamp(value.getTime())));
+		builtIn(LocalDateTime.class,
+				(statement, index, value) -> statement.setTimestamp(index, Timestamp.valueOf(value)));
+		builtIn(LocalDate.class, (statement, index, value) -> statement.setDate(index, java.sql.Date.valueOf(value)));
+		builtIn(LocalTime.class, (statement, index, value) -> statement.setTime(index, Time.valueOf(value)));
+		builtIn(Instant.class, (statement, index, value) -> statement.setTimestamp(index, Timestamp.from(value)));
+		builtIn(Character.class, (statement, index, value) -> statement.setString(index, value.toString()));
+	}
+
+	private static <T> void builtIn(Class<T> clazz, ParamBinder<T> binder) {
+		BUILT_IN.put(clazz, binder);
+	}
+
+	/**
+	 * Registers the binder of the given class and its subclasses, replacing a
+	 * built in or previously registered one. Binders are resolved again after
+	 * registration, so it is best done on startup.
+	 *
+	 * @param clazz
+	 * @param binder
+	 */
+	public static synchronized <T> void register(Class<T> clazz, ParamBinder<? super T> binder) {
+		registered.put(clazz, binder);
+		binders = newBinders();
+	}
+
+	/**
+	 * Returns the binder of the given class.
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	public static ParamBinder<Object> binder(Class<?> clazz) {
+		return binders.get(clazz);
+	}
+
+	/**
+	 * Binds a param by the binder of its class, or as null.
+	 *
+	 * @param statement
+	 * @param index
+	 * @param value
+	 * @throws SQLException
+	 */
+	public static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+		if (value == null)
+			statement.setNull(index, Types.VARCHAR);
+		else
+			binders.get(value.getClass()).bind(statement, index, value);
+	}
+
+	static void bind(PreparedStatement statement, int index, Object value, boolean emptyStringAsNull)
+			throws SQLException {
+		if (value == null || emptyStringAsNull && value instanceof String string && string.isEmpty())
+			statement.setNull(index, Types.VARCHAR);
+		else
+			binders.get(value.getClass()).bind(statement, index, value);
+	}
+
+	private static ClassValue<ParamBinder<Object>> newBinders() {
+		return new ClassValue<>() {
+			@Override
+			protected ParamBinder<Object> computeValue(Class<?> type) {
+				return resolve(type);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private static synchronized ParamBinder<Object> resolve(Class<?> type) {
+		for (var clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+			var binder = registered.get(clazz);
+			if (binder != null)
+				return (ParamBinder<Object>) binder;
+		}
+		for (var entry : registered.entrySet()) {
+			if (entry.getKey().isAssignableFrom(type))
+				return (ParamBinder<Object>) entry.getValue();
+		}
+		for (var clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+			var binder = BUILT_IN.get(clazz);
+			if (binder != null)
+				return (ParamBinder<Object>) binder;
+		}
+		if (Enum.class.isAssignableFrom(type))
+			return (statement, index, value) -> statement.setString(index, ((Enum<?>) value).name());
+		if (InputStream.class.isAssignableFrom(type))
+			return (statement, index, value) -> statement.setBinaryStream(index, (InputStream) value);
+		if (Reader.class.isAssignableFrom(type))
+			return (statement, index, value) -> statement.setCharacterStream(index, (Reader) value);
+		if (Blob.class.isAssignableFrom(type))
+			return (statement, index, value) -> statement.setBlob(index, (Blob) value);
+		if (Clob.class.isAssignableFrom(type))
+			return (statement, index, value) -> statement.setClob(index, (Clob) value);
+		return (statement, index, value) -> statement.setObject(index, value);
+	}
+}
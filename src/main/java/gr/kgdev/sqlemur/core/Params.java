@@ -0,0 +1,162 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Params of a query, bound in order. Primitives are kept unboxed and bound by
+ * their typed setters, other values by {@link ParamBinders}. It is a
+ * {@code List<Object>}, so it can be passed to any method taking params,
+ * values are only boxed if read as a list (ex by query listeners).
+ *
+ * <pre>
+ * sqlemur.executeQueryToList("select * from orders where customer_id = ? and total > ?",
+ * 		Params.of().bind(customerId).bind(minTotal), Order.class);
+ * </pre>
+ */
+public final class Params extends AbstractList<Object> implements RandomAccess {
+
+	private static final byte OBJECT = 0;
+	private static final byte LONG = 1;
+	private static final byte INT = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte NULL = 5;
+
+	private byte[] kinds;
+	// primitive values, doubles as raw bits and null params as their sql type
+	private long[] primitives;
+	private Object[] objects;
+	private int size;
+
+	private Params(int capacity) {
+		this.kinds = new byte[capacity];
+		this.primitives = new long[capacity];
+		this.objects = new Object[capacity];
+	}
+
+	public static Params of() {
+		return new Params(8);
+	}
+
+	/**
+	 * Creates params of the given expected number, so they are not resized.
+	 *
+	 * @param capacity
+	 * @return
+	 */
+	public static Params of(int capacity) {
+		return new Params(Math.max(1, capacity));
+	}
+
+	public Params bind(long value) {
+		return add(LONG, value, null);
+	}
+
+	public Params bind(int value) {
+		return add(INT, value, null);
+	}
+
+	public Params bind(double value) {
+		return add(DOUBLE, Double.doubleToRawLongBits(value), null);
+	}
+
+	public Params bind(boolean value) {
+		return add(BOOLEAN, value ? 1 : 0, null);
+	}
+
+	/**
+	 * Binds a value by the binder of its class, or null.
+	 *
+	 * @param value
+	 * @return
+	 */
+	public Params bind(Object value) {
+		return add(OBJECT, 0, value);
+	}
+
+	/**
+	 * Binds null of the given sql type, see {@link java.sql.Types}.
+	 *
+	 * @param sqlType
+	 * @return
+	 */
+	public Params bindNull(int sqlType) {
+		return add(NULL, sqlType, null);
+	}
+
+	private Params add(byte kind, long primitive, Object object) {
+		if (size == kinds.length) {
+			var capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			primitives = Arrays.copyOf(primitives, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+		}
+		kinds[size] = kind;
+		primitives[size] = primitive;
+		objects[size] = object;
+		size++;
+		return this;
+	}
+
+	@Override
+	public Object get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index);
+		switch (kinds[index]) {
+		case LONG:
+			return primitives[index];
+		case INT:
+			return (int) primitives[index];
+		case DOUBLE:
+			return Double.longBitsToDouble(primitives[index]);
+		case BOOLEAN:
+			return primitives[index] != 0;
+		case NULL:
+			return null;
+		default:
+			return objects[index];
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Binds all params to the given statement.
+	 *
+	 * @param statement
+	 * @param emptyStringAsNull whether empty strings are bound as null
+	 * @throws SQLException
+	 */
+	void bindTo(PreparedStatement statement, boolean emptyStringAsNull) throws SQLException {
+		for (var i = 0; i < size; i++) {
+			var index = i + 1;
+			switch (kinds[i]) {
+			case LONG:
+				statement.setLong(index, primitives[i]);
+				break;
+			case INT:
+				statement.setInt(index, (int) primitives[i]);
+				break;
+			case DOUBLE:
+				statement.setDouble(index, Double.longBitsToDouble(primitives[i]));
+				break;
+			case BOOLEAN:
+				statement.setBoolean(index, primitives[i] != 0);
+				break;
+			case NULL:
+				statement.setNull(index, (int) primitives[i]);
+				break;
+			default:
+				ParamBinders.bind(statement, index, objects[i], emptyStringAsNull);
+				break;
+			}
+		}
+	}
+}
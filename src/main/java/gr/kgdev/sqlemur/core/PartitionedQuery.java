@@ -0,0 +1,118 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Runs the slices of a partitioned query on virtual threads, at most
+ * parallelism of them at the same time. Results of slices are merged in slice
+ * order, or in completion order if order does not matter. The first failing
+ * slice cancels slices not started yet.
+ *
+ * @param <T>
+ */
+final class PartitionedQuery<T> implements AutoCloseable {
+
+	private final List<CompletableFuture<List<T>>> results;
+	private final LinkedBlockingQueue<CompletableFuture<List<T>>> completed = new LinkedBlockingQueue<>();
+	private final boolean ordered;
+	private volatile boolean cancelled = false;
+
+	PartitionedQuery(int slices, int parallelism, boolean ordered, SliceQuery<T> query) {
+		this.ordered = ordered;
+		this.results = new ArrayList<>(slices);
+		for (var i = 0; i < slices; i++)
+			results.add(new CompletableFuture<>());
+
+		var next = new AtomicInteger();
+		for (var worker = 0; worker < Math.min(parallelism, slices); worker++) {
+			Thread.ofVirtual().name("sqlemur-partition-" + worker).start(() -> {
+				int slice;
+				while (!cancelled && (slice = next.getAndIncrement()) < slices) {
+					var result = results.get(slice);
+					try {
+						result.complete(query.run(slice));
+					} catch (Throwable t) {
+						result.completeExceptionally(t);
+						cancelled = true;
+					}
+					completed.add(result);
+				}
+			});
+		}
+	}
+
+	List<T> toList() throws SQLException {
+		var rows = new ArrayList<T>();
+		try {
+			for (var i = 0; i < results.size(); i++)
+				rows.addAll(await(next(i)));
+		} finally {
+			close();
+		}
+		return rows;
+	}
+
+	Stream<T> stream() {
+		return IntStream.range(0, results.size()).mapToObj(i -> {
+			try {
+				return await(next(i));
+			} catch (SQLException e) {
+				close();
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}).flatMap(List::stream).onClose(this::close);
+	}
+
+	private CompletableFuture<List<T>> next(int i) throws SQLException {
+		if (ordered)
+			return results.get(i);
+		try {
+			return completed.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for partitioned query", e);
+		}
+	}
+
+	private List<T> await(CompletableFuture<List<T>> result) throws SQLException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for partitioned query", e);
+		} catch (CancellationException e) {
+			throw new SQLException("Partitioned query was cancelled", e);
+		} catch (ExecutionException e) {
+			close();
+			if (e.getCause() instanceof SQLException cause)
+				throw cause;
+			if (e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			throw new SQLException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Cancels slices not started yet. Running slices run to completion.
+	 */
+	@Override
+	public void close() {
+		cancelled = true;
+		for (var result : results)
+			result.cancel(false);
+	}
+
+	@FunctionalInterface
+	interface SliceQuery<T> {
+		List<T> run(int slice) throws SQLException;
+	}
+}
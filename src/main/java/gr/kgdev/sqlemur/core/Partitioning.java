@@ -0,0 +1,205 @@
+package gr.kgdev.sqlemur.core;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a query into slices run concurrently by
+ * {@link SQLemur#executePartitionedQueryToList(String, List, Partitioning)}.
+ * Every slice filters the rows of the query with a predicate, so the query is
+ * run as {@code select * from (query) p where predicate}. Columns referenced by
+ * predicates must be selected by the query.
+ */
+public class Partitioning {
+
+	private final List<Slice> slices;
+	private final String orderBy;
+	private final boolean ordered;
+	private final int parallelism;
+
+	private Partitioning(List<Slice> slices, String orderBy, boolean ordered, int parallelism) {
+		if (slices.isEmpty())
+			throw new IllegalArgumentException("Partitioning needs at least one slice");
+		this.slices = Collections.unmodifiableList(slices);
+		this.orderBy = orderBy;
+		this.ordered = ordered;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Splits the numeric key range [min, max] into the given number of slices of
+	 * (about) equal width.
+	 *
+	 * @param column
+	 * @param min
+	 * @param max
+	 * @param slices
+	 * @return
+	 */
+	public static Partitioning range(String column, long min, long max, int slices) {
+		if (max < min || slices < 1)
+			throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "] in " + slices + " slices");
+		var count = (int) Math.min(slices, max - min + 1);
+		var bounds = new ArrayList<Object>(count + 1);
+		for (var i = 0; i < count; i++)
+			bounds.add(min + (long) ((double) (max - min + 1) * i / count));
+		bounds.add(max);
+		return range(column, bounds);
+	}
+
+	/**
+	 * Splits the date range [from, to] into the given number of slices of equal
+	 * length in days.
+	 *
+	 * @param column
+	 * @param from
+	 * @param to
+	 * @param slices
+	 * @return
+	 */
+	public static Partitioning range(String column, LocalDate from, LocalDate to, int slices) {
+		var days = to.toEpochDay() - from.toEpochDay();
+		if (days < 0 || slices < 1)
+			throw new IllegalArgumentException("Invalid range [" + from + ", " + to + "] in " + slices + " slices");
+		var count = (int) Math.min(slices, days + 1);
+		var bounds = new ArrayList<Object>(count + 1);
+		for (var i = 0; i < count; i++)
+			bounds.add(from.plusDays((long) ((double) (days + 1) * i / count)));
+		bounds.add(to);
+		return range(column, bounds);
+	}
+
+	/**
+	 * Splits the timestamp range [from, to] into the given number of slices of
+	 * equal length.
+	 *
+	 * @param column
+	 * @param from
+	 * @param to
+	 * @param slices
+	 * @return
+	 */
+	public static Partitioning range(String column, LocalDateTime from, LocalDateTime to, int slices) {
+		var length = Duration.between(from, to);
+		if (length.isNegative() || slices < 1)
+			throw new IllegalArgumentException("Invalid range [" + from + ", " + to + "] in " + slices + " slices");
+		var bounds = new ArrayList<Object>(slices + 1);
+		for (var i = 0; i < slices; i++)
+			bounds.add(from.plus(length.multipliedBy(i).dividedBy(slices)));
+		bounds.add(to);
+		return range(column, bounds);
+	}
+
+	// slices are [bound i, bound i + 1), last one includes its upper bound
+	private static Partitioning range(String column, List<Object> bounds) {
+		var slices = new ArrayList<Slice>(bounds.size() - 1);
+		for (var i = 0; i < bounds.size() - 1; i++) {
+			var last = i == bounds.size() - 2;
+			slices.add(new Slice(column + " >= ? and " + column + (last ? " <= ?" : " < ?"),
+					List.of(bounds.get(i), bounds.get(i + 1))));
+		}
+		return new Partitioning(slices, column, false, 0);
+	}
+
+	/**
+	 * Creates a slice per predicate, ex "region = 'EU'". Rows matching none of
+	 * them are left out and rows matching many of them are repeated.
+	 *
+	 * @param predicates
+	 * @return
+	 */
+	public static Partitioning predicates(String... predicates) {
+		var slices = new ArrayList<Slice>(predicates.length);
+		for (var predicate : predicates)
+			slices.add(new Slice(predicate, List.of()));
+		return new Partitioning(slices, null, false, 0);
+	}
+
+	/**
+	 * Creates a slice per predicate with params.
+	 *
+	 * @param slices
+	 * @return
+	 */
+	public static Partitioning slices(List<Slice> slices) {
+		return new Partitioning(new ArrayList<>(slices), null, false, 0);
+	}
+
+	/**
+	 * Returns a copy keeping the order of rows: slices are merged in order and
+	 * rows of each slice are sorted by the range column.
+	 *
+	 * @return
+	 */
+	public Partitioning ordered() {
+		if (orderBy == null)
+			throw new IllegalStateException("Ordering predicate slices needs an order by clause");
+		return new Partitioning(slices, orderBy, true, parallelism);
+	}
+
+	/**
+	 * Returns a copy merging slices in order and sorting rows of each slice by
+	 * the given order by clause, ex "created_at desc".
+	 *
+	 * @param orderBy
+	 * @return
+	 */
+	public Partitioning ordered(String orderBy) {
+		return new Partitioning(slices, orderBy, true, parallelism);
+	}
+
+	/**
+	 * Returns a copy running at most the given number of slices at the same time,
+	 * each holding a pooled connection.
+	 *
+	 * @param parallelism
+	 * @return
+	 */
+	public Partitioning parallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive");
+		return new Partitioning(slices, orderBy, ordered, parallelism);
+	}
+
+	public List<Slice> getSlices() {
+		return slices;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Returns max slices run at the same time, 0 for the default of a slice per
+	 * processor, leaving a quarter of the pool to other callers.
+	 *
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	String query(String query, Slice slice) {
+		var sliced = "select * from (" + query + ") p where " + slice.predicate();
+		return ordered ? sliced + " order by " + orderBy : sliced;
+	}
+
+	List<Object> params(List<Object> params, Slice slice) {
+		if (slice.params().isEmpty())
+			return params;
+		var all = new ArrayList<Object>(params.size() + slice.params().size());
+		all.addAll(params);
+		all.addAll(slice.params());
+		return all;
+	}
+
+	/**
+	 * A predicate filtering the rows of a slice, along with its params.
+	 */
+	public record Slice(String predicate, List<Object> params) {
+	}
+}
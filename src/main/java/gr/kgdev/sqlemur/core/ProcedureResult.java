@@ -0,0 +1,67 @@
+package gr.kgdev.sqlemur.core;
+
+import java.util.List;
+
+/**
+ * Outcome of a procedure call: rows of the result sets it returned, in order,
+ * update counts it returned and values of its OUT and INOUT params.
+ */
+public final class ProcedureResult {
+
+	private final List<List<?>> resultSets;
+	private final List<Long> updateCounts;
+	// by param position, null for IN params
+	private final Object[] outs;
+	private final boolean[] outParams;
+
+	ProcedureResult(List<List<?>> resultSets, List<Long> updateCounts, Object[] outs, boolean[] outParams) {
+		this.resultSets = resultSets;
+		this.updateCounts = updateCounts;
+		this.outs = outs;
+		this.outParams = outParams;
+	}
+
+	/**
+	 * Returns rows of all result sets, in the order they were returned.
+	 *
+	 * @return
+	 */
+	public List<List<?>> getResultSets() {
+		return resultSets;
+	}
+
+	/**
+	 * Returns rows of the result set at the given index (zero based), mapped to
+	 * the class given for it, or to rows.
+	 *
+	 * @param <T>
+	 * @param index
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getResultSet(int index) {
+		if (index < 0 || index >= resultSets.size())
+			throw new IndexOutOfBoundsException(
+					"Result set " + index + " out of " + resultSets.size() + " returned by procedure");
+		return (List<T>) resultSets.get(index);
+	}
+
+	public List<Long> getUpdateCounts() {
+		return updateCounts;
+	}
+
+	/**
+	 * Returns the value of the OUT or INOUT param at the given position, one based
+	 * as the params of the call.
+	 *
+	 * @param <T>
+	 * @param position
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getOut(int position) {
+		if (position < 1 || position > outParams.length || !outParams[position - 1])
+			throw new IllegalArgumentException("Param " + position + " of procedure is not an OUT param");
+		return (T) outs[position - 1];
+	}
+}
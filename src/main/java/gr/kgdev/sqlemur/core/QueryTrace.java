@@ -0,0 +1,114 @@
+package gr.kgdev.sqlemur.core;
+
+import java.lang.System.Logger.Level;
+import java.util.List;
+
+import gr.kgdev.sqlemur.metrics.QueryEvent;
+import gr.kgdev.sqlemur.metrics.QueryListener;
+import gr.kgdev.sqlemur.metrics.QueryType;
+
+/**
+ * Times the phases of a single execution and reports them to query listeners
+ * when it finishes. When no listener is registered {@link #DISABLED} is used,
+ * which does not read the clock at all.
+ */
+final class QueryTrace {
+
+	private static final System.Logger LOGGER = System.getLogger(QueryTrace.class.getName());
+
+	static final QueryTrace DISABLED = new QueryTrace(null, null, null, null);
+
+	private final List<QueryListener> listeners;
+	private final QueryType type;
+	private String sql;
+	private final List<Object> params;
+	private final boolean enabled;
+	private long mark;
+	private long acquire;
+	private long execute;
+	private long fetch;
+	private long map;
+	private long rows;
+	private Throwable error;
+	private boolean finished;
+
+	QueryTrace(List<QueryListener> listeners, QueryType type, String sql, List<Object> params) {
+		this.listeners = listeners;
+		this.type = type;
+		this.sql = sql;
+		this.params = params;
+		this.enabled = listeners != null;
+		this.mark = enabled ? System.nanoTime() : 0;
+	}
+
+	private long lap() {
+		var now = System.nanoTime();
+		var elapsed = now - mark;
+		mark = now;
+		return elapsed;
+	}
+
+	/**
+	 * Sets the sql of a trace started before the statement was known (ex
+	 * generated inserts).
+	 */
+	void rename(String sql) {
+		if (enabled)
+			this.sql = sql;
+	}
+
+	/**
+	 * Restarts the clock without accounting the time elapsed, ex time spent by the
+	 * caller between two rows of an iterator.
+	 */
+	void resume() {
+		if (enabled)
+			mark = System.nanoTime();
+	}
+
+	void acquired() {
+		if (enabled)
+			acquire += lap();
+	}
+
+	void executed() {
+		if (enabled)
+			execute += lap();
+	}
+
+	void fetched() {
+		if (enabled)
+			fetch += lap();
+	}
+
+	void mapped() {
+		if (enabled) {
+			map += lap();
+			rows++;
+		}
+	}
+
+	void updated(long count) {
+		if (enabled)
+			rows += count;
+	}
+
+	void failed(Throwable error) {
+		if (enabled)
+			this.error = error;
+	}
+
+	void finish() {
+		if (!enabled || finished)
+			return;
+		finished = true;
+		var event = new QueryEvent(type, sql, params, acquire, execute, fetch, map, rows, error);
+		for (var listener : listeners) {
+			try {
+				listener.onQuery(event);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Query listener " + listener.getClass().getName() + " failed", e);
+			}
+		}
+	}
+}
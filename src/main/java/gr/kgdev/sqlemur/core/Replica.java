@@ -0,0 +1,101 @@
+package gr.kgdev.sqlemur.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * A read replica routed by {@link ReplicaRouter}, along with the load and
+ * health figures load balancers choose by.
+ */
+public class Replica {
+
+	// weight of the last sample in the moving average of latency
+	private static final double LATENCY_ALPHA = 0.2;
+
+	private final String url;
+	private final DataSource dataSource;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile double latencyNanos = 0;
+	private volatile boolean healthy = true;
+	private volatile long backoffMillis = 0;
+
+	Replica(String url, DataSource dataSource) {
+		this.url = url;
+		this.dataSource = dataSource;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Returns the number of connections of this replica currently borrowed.
+	 *
+	 * @return
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns the moving average of the time connections of this replica are
+	 * held, 0 until the first one is given back.
+	 *
+	 * @return
+	 */
+	public double getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	void borrowed() {
+		inFlight.incrementAndGet();
+	}
+
+	void released(long nanos) {
+		inFlight.decrementAndGet();
+		var latency = latencyNanos;
+		// racy update, a lost sample does not matter to the average
+		latencyNanos = latency == 0 ? nanos : latency + LATENCY_ALPHA * (nanos - latency);
+	}
+
+	/**
+	 * Marks this replica unhealthy.
+	 *
+	 * @return false if it was already unhealthy
+	 */
+	synchronized boolean eject() {
+		var wasHealthy = healthy;
+		healthy = false;
+		return wasHealthy;
+	}
+
+	/**
+	 * Returns the backoff until next probe, doubling the previous one up to max.
+	 *
+	 * @return
+	 */
+	synchronized long nextBackoff(long minBackoffMillis, long maxBackoffMillis) {
+		backoffMillis = backoffMillis == 0 ? minBackoffMillis : Math.min(backoffMillis * 2, maxBackoffMillis);
+		return backoffMillis;
+	}
+
+	synchronized void restore() {
+		healthy = true;
+		backoffMillis = 0;
+		latencyNanos = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Replica[" + url + ", inFlight=" + getInFlight() + ", healthy=" + healthy + "]";
+	}
+}
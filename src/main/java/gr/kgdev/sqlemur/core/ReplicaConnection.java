@@ -0,0 +1,39 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.dbcp2.DelegatingConnection;
+
+/**
+ * Connection borrowed from a replica. Closing it gives it back to the replica
+ * pool and accounts the time it was held.
+ */
+class ReplicaConnection extends DelegatingConnection<Connection> {
+
+	private final Replica replica;
+	private final long borrowedAt = System.nanoTime();
+	private boolean released = false;
+
+	ReplicaConnection(Replica replica, Connection conn) {
+		super(conn);
+		this.replica = replica;
+		replica.borrowed();
+	}
+
+	Replica getReplica() {
+		return replica;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			super.close();
+		} finally {
+			if (!released) {
+				released = true;
+				replica.released(System.nanoTime() - borrowedAt);
+			}
+		}
+	}
+}
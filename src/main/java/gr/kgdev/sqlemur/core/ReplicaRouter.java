@@ -0,0 +1,171 @@
+package gr.kgdev.sqlemur.core;
+
+import java.lang.System.Logger.Level;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * Routes reads to replicas through a {@link LoadBalancer}. A replica failing to
+ * give a connection, or failing with a connection exception (sql state class
+ * 08), is ejected and probed in the background after a backoff which doubles
+ * on every failed probe. When no replica is healthy reads go to the primary.
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+	private static final System.Logger LOGGER = System.getLogger(ReplicaRouter.class.getName());
+
+	private final List<Replica> replicas;
+	private volatile LoadBalancer loadBalancer;
+	private volatile long minBackoffMillis = 1000;
+	private volatile long maxBackoffMillis = 30000;
+	private volatile int probeTimeoutSeconds = 5;
+	private volatile ScheduledExecutorService prober;
+
+	public ReplicaRouter(List<String> urls, List<DataSource> dataSources, LoadBalancer loadBalancer) {
+		if (urls.size() != dataSources.size())
+			throw new IllegalArgumentException("Expected a datasource per replica url");
+		var replicas = new ArrayList<Replica>(urls.size());
+		for (var i = 0; i < urls.size(); i++)
+			replicas.add(new Replica(urls.get(i), dataSources.get(i)));
+		this.replicas = Collections.unmodifiableList(replicas);
+		this.loadBalancer = loadBalancer;
+	}
+
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	public LoadBalancer getLoadBalancer() {
+		return loadBalancer;
+	}
+
+	public void setLoadBalancer(LoadBalancer loadBalancer) {
+		this.loadBalancer = loadBalancer;
+	}
+
+	public void setMinBackoffMillis(long minBackoffMillis) {
+		this.minBackoffMillis = minBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public void setProbeTimeoutSeconds(int probeTimeoutSeconds) {
+		this.probeTimeoutSeconds = probeTimeoutSeconds;
+	}
+
+	/**
+	 * Returns a connection of a healthy replica chosen by the load balancer, or
+	 * null if no replica is healthy or able to give one.
+	 *
+	 * @return
+	 */
+	public Connection getConnection() {
+		var healthy = healthy();
+		while (!healthy.isEmpty()) {
+			var replica = loadBalancer.choose(healthy);
+			try {
+				return new ReplicaConnection(replica, replica.getDataSource().getConnection());
+			} catch (SQLException e) {
+				eject(replica, e);
+				healthy.remove(replica);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reports a failure of a connection returned by {@link #getConnection()}. The
+	 * replica is ejected on connection exceptions.
+	 *
+	 * @param conn
+	 * @param e
+	 */
+	public void failed(Connection conn, SQLException e) {
+		if (conn instanceof ReplicaConnection replicaConnection && e.getSQLState() != null
+				&& e.getSQLState().startsWith("08"))
+			eject(replicaConnection.getReplica(), e);
+	}
+
+	private List<Replica> healthy() {
+		var healthy = new ArrayList<Replica>(replicas.size());
+		for (var replica : replicas) {
+			if (replica.isHealthy())
+				healthy.add(replica);
+		}
+		return healthy;
+	}
+
+	private void eject(Replica replica, SQLException e) {
+		if (!replica.eject())
+			return;
+		var backoff = replica.nextBackoff(minBackoffMillis, maxBackoffMillis);
+		LOGGER.log(Level.WARNING, "Replica " + replica.getUrl() + " ejected, probing in " + backoff + "ms: "
+				+ e.getMessage());
+		prober().schedule(() -> probe(replica), backoff, TimeUnit.MILLISECONDS);
+	}
+
+	private void probe(Replica replica) {
+		try (var conn = replica.getDataSource().getConnection()) {
+			if (conn.isValid(probeTimeoutSeconds)) {
+				replica.restore();
+				LOGGER.log(Level.INFO, "Replica " + replica.getUrl() + " restored");
+				return;
+			}
+		} catch (SQLException e) {
+			// probed again after a longer backoff
+		}
+		var backoff = replica.nextBackoff(minBackoffMillis, maxBackoffMillis);
+		prober().schedule(() -> probe(replica), backoff, TimeUnit.MILLISECONDS);
+	}
+
+	private ScheduledExecutorService prober() {
+		var executor = prober;
+		if (executor == null) {
+			synchronized (this) {
+				executor = prober;
+				if (executor == null) {
+					executor = Executors.newSingleThreadScheduledExecutor(r -> {
+						var thread = new Thread(r, "sqlemur-replica-prober");
+						thread.setDaemon(true);
+						return thread;
+					});
+					prober = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops probing and closes replica datasources which are closeable. Called by
+	 * {@link SQLemur#close()}.
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (prober != null)
+			prober.shutdownNow();
+		SQLException error = null;
+		for (var replica : replicas) {
+			try {
+				DatasourceFactory.close(replica.getDataSource());
+			} catch (SQLException e) {
+				if (error == null)
+					error = e;
+				else
+					error.addSuppressed(e);
+			}
+		}
+		if (error != null)
+			throw error;
+	}
+}
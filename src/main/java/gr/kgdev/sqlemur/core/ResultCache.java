@@ -0,0 +1,320 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of query results keyed by query, params and mapping. Entries expire
+ * after their time to live and total weight (rows cached) is bounded by LRU.
+ *
+ * Every entry depends on a set of tables. Writing to a table invalidates the
+ * entries depending on it. Concurrent misses of the same key are coalesced, so
+ * only one of them hits the database and the rest wait for its result.
+ *
+ * Cached reads are coherent with writes in auto commit mode and writes inside
+ * {@link SQLemur#transaction(SqlTransaction)}, invalidated once they are
+ * committed. Writes on a connection of the caller with auto commit disabled are
+ * invalidated when executed, before the caller commits, so a concurrent read
+ * may cache the old rows again until they expire.
+ */
+public class ResultCache {
+
+	private static final Pattern WRITTEN_TABLE = Pattern.compile(
+			"^\\s*(?:insert\\s+into|update|delete\\s+from|merge\\s+into|replace\\s+into|upsert\\s+into|truncate\\s+table)\\s+([\\w.\"`\\[\\]]+)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern READ_TABLE = Pattern.compile("\\b(?:from|join)\\s+([\\w.\"`\\[\\]]+)",
+			Pattern.CASE_INSENSITIVE);
+
+	private final long maxWeight;
+	private final Duration defaultTtl;
+	// guarded by this
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final HashMap<String, Set<Key>> keysByTable = new HashMap<>();
+	private final HashMap<String, Long> invalidatedAt = new HashMap<>();
+	private long epoch = 0;
+	private long allInvalidatedAt = 0;
+	private long weight = 0;
+	private final ConcurrentHashMap<Key, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param maxWeight  max rows cached in total
+	 * @param defaultTtl time to live of entries cached without one
+	 */
+	public ResultCache(long maxWeight, Duration defaultTtl) {
+		this.maxWeight = maxWeight;
+		this.defaultTtl = defaultTtl;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public Duration getDefaultTtl() {
+		return defaultTtl;
+	}
+
+	/**
+	 * Returns the cached result of the given key, or loads it with loader and
+	 * caches it. If the same key is being loaded by another thread, it waits for
+	 * that result instead of loading it again.
+	 *
+	 * @param query
+	 * @param params
+	 * @param mapping distinguishes results of the same query mapped differently
+	 * @param ttl     time to live, null for the default one
+	 * @param tables  tables the result depends on, empty to parse them from query
+	 * @param loader
+	 * @return
+	 * @throws SQLException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String query, List<Object> params, Object mapping, Duration ttl, Collection<String> tables,
+			SqlCallable<T> loader) throws SQLException {
+		var key = new Key(query, Collections.unmodifiableList(new ArrayList<>(params)), mapping);
+		long startEpoch;
+		synchronized (this) {
+			var entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expiresAt - System.nanoTime() > 0) {
+					hits.increment();
+					return (T) entry.value;
+				}
+				remove(key);
+			}
+			startEpoch = epoch;
+		}
+
+		var future = new CompletableFuture<Object>();
+		var existing = loading.putIfAbsent(key, future);
+		if (existing != null) {
+			coalesced.increment();
+			return (T) await(existing);
+		}
+
+		misses.increment();
+		try {
+			var value = loader.call();
+			future.complete(value);
+			put(key, value, ttl != null ? ttl : defaultTtl,
+					tables == null || tables.isEmpty() ? readTables(query) : normalize(tables), startEpoch);
+			return value;
+		} catch (Throwable t) {
+			future.completeExceptionally(t);
+			throw t;
+		} finally {
+			loading.remove(key, future);
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for cached result", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException cause)
+				throw cause;
+			if (e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			if (e.getCause() instanceof Error cause)
+				throw cause;
+			throw new SQLException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private synchronized void put(Key key, Object value, Duration ttl, Set<String> tables, long startEpoch) {
+		// result may have been read before a write which invalidated it
+		if (allInvalidatedAt > startEpoch)
+			return;
+		for (var table : tables) {
+			if (invalidatedAt.getOrDefault(table, 0L) > startEpoch)
+				return;
+		}
+		var entryWeight = value instanceof Collection<?> c ? Math.max(1, c.size()) : 1;
+		if (entryWeight > maxWeight)
+			return;
+
+		remove(key);
+		entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos(), entryWeight, tables));
+		weight += entryWeight;
+		for (var table : tables)
+			keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+
+		var it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			var eldest = it.next();
+			it.remove();
+			unlink(eldest.getKey(), eldest.getValue());
+			evictions.increment();
+		}
+	}
+
+	private void remove(Key key) {
+		var entry = entries.remove(key);
+		if (entry != null)
+			unlink(key, entry);
+	}
+
+	private void unlink(Key key, Entry entry) {
+		weight -= entry.weight;
+		for (var table : entry.tables) {
+			var keys = keysByTable.get(table);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty())
+					keysByTable.remove(table);
+			}
+		}
+	}
+
+	/**
+	 * Removes entries depending on any of the given tables.
+	 *
+	 * @param tables
+	 */
+	public void invalidate(String... tables) {
+		invalidate(List.of(tables));
+	}
+
+	/**
+	 * Removes entries depending on any of the given tables.
+	 *
+	 * @param tables
+	 */
+	public synchronized void invalidate(Collection<String> tables) {
+		invalidations.increment();
+		epoch++;
+		for (var table : normalize(tables)) {
+			invalidatedAt.put(table, epoch);
+			var keys = keysByTable.remove(table);
+			if (keys == null)
+				continue;
+			for (var key : keys) {
+				var entry = entries.remove(key);
+				if (entry != null)
+					unlink(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void invalidateAll() {
+		invalidations.increment();
+		epoch++;
+		allInvalidatedAt = epoch;
+		invalidatedAt.clear();
+		entries.clear();
+		keysByTable.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Invalidates entries depending on the table written by the given query. If
+	 * the table cannot be told (ex procedures, ddl) all entries are invalidated.
+	 *
+	 * @param query
+	 */
+	public void invalidateWrittenBy(String query) {
+		var table = writtenTable(query);
+		if (table != null)
+			invalidate(List.of(table));
+		else
+			invalidateAll();
+	}
+
+	/**
+	 * Returns the table written by an insert, update, delete, merge or truncate
+	 * query, or null if it cannot be told.
+	 *
+	 * @param query
+	 * @return
+	 */
+	public static String writtenTable(String query) {
+		var matcher = WRITTEN_TABLE.matcher(query);
+		return matcher.find() ? normalize(matcher.group(1)) : null;
+	}
+
+	/**
+	 * Returns the tables following from and join keywords of the given query.
+	 *
+	 * @param query
+	 * @return
+	 */
+	public static Set<String> readTables(String query) {
+		var tables = new LinkedHashSet<String>();
+		var matcher = READ_TABLE.matcher(query);
+		while (matcher.find())
+			tables.add(normalize(matcher.group(1)));
+		return tables;
+	}
+
+	private static Set<String> normalize(Collection<String> tables) {
+		var normalized = new LinkedHashSet<String>();
+		for (var table : tables)
+			normalized.add(normalize(table));
+		return normalized;
+	}
+
+	// tables are matched by name, case insensitive, without quotes and schema
+	private static String normalize(String table) {
+		var name = table.replaceAll("[\"`\\[\\]]", "");
+		return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public Stats getStats() {
+		long currentWeight;
+		int size;
+		synchronized (this) {
+			currentWeight = weight;
+			size = entries.size();
+		}
+		return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), invalidations.sum(), size,
+				currentWeight);
+	}
+
+	/**
+	 * Snapshot of cache metrics. Coalesced are misses which waited for the result
+	 * of another thread instead of hitting the database.
+	 */
+	public record Stats(long hits, long misses, long coalesced, long evictions, long invalidations, int size,
+			long weight) {
+
+		public double hitRate() {
+			var total = hits + misses + coalesced;
+			return total == 0 ? 0 : (double) (hits + coalesced) / total;
+		}
+	}
+
+	private record Key(String query, List<Object> params, Object mapping) {
+	}
+
+	private record Entry(Object value, long expiresAt, long weight, Set<String> tables) {
+	}
+}
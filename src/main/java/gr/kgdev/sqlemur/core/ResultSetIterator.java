@@ -0,0 +1,121 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import gr.kgdev.sqlemur.orm.RowMapper;
+
+/**
+ * Iterator over an open result set. Rows are mapped on demand, one at a time.
+ * Statement is closed and connection is returned to the pool when the result
+ * set is exhausted or when the iterator is closed, so always use it in a
+ * try-with-resources block. It throws unchecked exceptions.
+ * 
+ * @param <T>
+ */
+public class ResultSetIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final Connection conn;
+	private final PreparedStatement statement;
+	private final ResultSet rset;
+	private final RowMapper<T> mapper;
+	private final boolean restoreAutoCommit;
+	private final QueryTrace trace;
+	private boolean fetched = false;
+	private boolean hasNext = false;
+	private boolean closed = false;
+
+	ResultSetIterator(Connection conn, PreparedStatement statement, ResultSet rset, RowMapper<T> mapper,
+			boolean restoreAutoCommit, QueryTrace trace) {
+		this.conn = conn;
+		this.statement = statement;
+		this.rset = rset;
+		this.mapper = mapper;
+		this.restoreAutoCommit = restoreAutoCommit;
+		this.trace = trace;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		if (!fetched) {
+			try {
+				trace.resume();
+				hasNext = rset.next();
+				trace.fetched();
+			} catch (SQLException e) {
+				trace.failed(e);
+				closeQuietly();
+				throw new RuntimeException(e.getMessage(), e);
+			}
+			fetched = true;
+			if (!hasNext)
+				close();
+		}
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		fetched = false;
+		try {
+			trace.resume();
+			var row = mapper.map(rset);
+			trace.mapped();
+			return row;
+		} catch (SQLException e) {
+			trace.failed(e);
+			closeQuietly();
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a sequential stream over the remaining rows. Closing the stream
+	 * closes this iterator.
+	 * 
+	 * @return
+	 */
+	public Stream<T> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		try (conn; statement; rset) {
+			if (restoreAutoCommit) {
+				conn.commit();
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			trace.failed(e);
+			throw new RuntimeException(e.getMessage(), e);
+		} finally {
+			trace.finish();
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how often {@link SQLemur#transaction(SqlTransaction, RetryPolicy)}
+ * retries a transaction. Transactions are retried when they are rolled back by
+ * the database because of contention: serialization failures and deadlocks
+ * (sql state class 40, ex 40001 or postgresql 40P01, covering mysql 1213 and
+ * sql server 1205), mysql lock wait timeouts (1205 with state HY000) and oracle
+ * deadlocks and serialization failures (60 with state 61000, 8177 with state
+ * 72000). Vendor codes are only matched along with their state, as other
+ * drivers may use the same numbers for unrelated errors. Retries wait a random backoff up to an exponentially
+ * growing cap ("full jitter"), so retried transactions do not collide again.
+ */
+public class RetryPolicy {
+
+	private static final RetryPolicy DEFAULTS = new RetryPolicy(5, Duration.ofMillis(10), Duration.ofSeconds(1));
+
+	private final int maxAttempts;
+	private final Duration minBackoff;
+	private final Duration maxBackoff;
+
+	private RetryPolicy(int maxAttempts, Duration minBackoff, Duration maxBackoff) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("Max attempts must be positive");
+		if (minBackoff.isNegative() || maxBackoff.compareTo(minBackoff) < 0)
+			throw new IllegalArgumentException("Invalid backoff [" + minBackoff + ", " + maxBackoff + "]");
+		this.maxAttempts = maxAttempts;
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * Returns a policy of 5 attempts, backing off from 10ms up to 1s.
+	 *
+	 * @return
+	 */
+	public static RetryPolicy defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Creates a policy running a transaction at most maxAttempts times, backing
+	 * off up to minBackoff after the first failure, doubling up to maxBackoff.
+	 *
+	 * @param maxAttempts
+	 * @param minBackoff
+	 * @param maxBackoff
+	 * @return
+	 */
+	public static RetryPolicy of(int maxAttempts, Duration minBackoff, Duration maxBackoff) {
+		return new RetryPolicy(maxAttempts, minBackoff, maxBackoff);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Returns whether the given exception, or any exception chained to it, means
+	 * that the transaction was rolled back because of contention.
+	 *
+	 * @param e
+	 * @return
+	 */
+	public boolean isRetryable(SQLException e) {
+		return isContention(e);
+	}
+
+	static boolean isContention(Throwable t) {
+		for (var depth = 0; t != null && depth < 16; depth++) {
+			if (t instanceof SQLException e) {
+				var state = e.getSQLState();
+				if (state != null && state.startsWith("40"))
+					return true;
+				if (state != null) {
+					switch (e.getErrorCode()) {
+					case 1205: // mysql lock wait timeout
+						if (state.equals("HY000"))
+							return true;
+						break;
+					case 60: // oracle deadlock
+						if (state.equals("61000"))
+							return true;
+						break;
+					case 8177: // oracle can not serialize access
+						if (state.equals("72000"))
+							return true;
+						break;
+					default:
+						break;
+					}
+				}
+				// batch failures chain the exceptions of their statements
+				if (e.getNextException() != null && e.getNextException() != e.getCause()
+						&& isContention(e.getNextException()))
+					return true;
+			}
+			t = t.getCause();
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a random backoff before the given retry, from zero up to min backoff
+	 * doubled per previous retry, capped by max backoff.
+	 *
+	 * @param retry starting from 1
+	 * @return
+	 */
+	public Duration backoff(int retry) {
+		var min = minBackoff.toNanos();
+		var cap = Math.min(maxBackoff.toNanos(), min << Math.min(retry - 1, 30));
+		if (cap <= 0)
+			return Duration.ZERO;
+		return Duration.ofNanos(ThreadLocalRandom.current().nextLong(cap + 1));
+	}
+}
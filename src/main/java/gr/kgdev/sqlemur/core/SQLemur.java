@@ -1,44 +1,335 @@
 package gr.kgdev.sqlemur.core;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.System.Logger.Level;
+import java.lang.ref.WeakReference;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Types;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
+import gr.kgdev.sqlemur.columnar.ColumnFrame;
+import gr.kgdev.sqlemur.export.ExportFormat;
+import gr.kgdev.sqlemur.export.ResultSetExporter;
+import gr.kgdev.sqlemur.metrics.QueryListener;
+import gr.kgdev.sqlemur.metrics.QueryType;
+import gr.kgdev.sqlemur.metrics.SlowQueryLog;
+import gr.kgdev.sqlemur.orm.ClassMapper;
+import gr.kgdev.sqlemur.orm.EntityMapper;
 import gr.kgdev.sqlemur.orm.ORMUtils;
+import gr.kgdev.sqlemur.orm.Row;
+import gr.kgdev.sqlemur.orm.RowMapper;
+import gr.kgdev.sqlemur.utils.SQLemurConfig;
+import gr.kgdev.sqlemur.utils.SQLemurProperties;
 
-public class SQLemur {
+public class SQLemur implements AutoCloseable {
 
+	private static final System.Logger LOGGER = System.getLogger(SQLemur.class.getName());
 	private static final List<Object> EMPTY_LIST = Collections.emptyList();
-	private DataSource dataSource;
+	// created on first use in lazy startup mode
+	private volatile DataSource dataSource;
+	private volatile CompletableFuture<Void> readiness = CompletableFuture.completedFuture(null);
 	private String driver;
 	private String url;
 	private String user;
 	private String password;
 	private boolean isCcMode = false;
+	private int fetchSize;
+	private int batchSize;
+	private int exportBufferSize;
+	private boolean emptyStringAsNull;
+	private StatementCache statementCache;
+	private volatile AsyncExecutor asyncExecutor;
+	private final CopyOnWriteArrayList<QueryListener> listeners = new CopyOnWriteArrayList<>();
+	// jdbc escape calls by procedure name, indexed by number of params
+	private final ConcurrentHashMap<String, String[]> callQueries = new ConcurrentHashMap<>();
+	private volatile ResultCache resultCache;
+	// queries written by the transaction running on each thread, invalidated in the cache when it ends.
+	// Also pins reads of the thread to primary while it is set
+	private final ThreadLocal<LinkedHashSet<String>> transactionWrites = new ThreadLocal<>();
+	private ReplicaRouter replicaRouter;
+	private volatile ConcurrencyLimiter concurrencyLimiter;
 
+	/**
+	 * Creates an instance reading from the replicas of sqlemur.replica.urls
+	 * property (comma separated) if it is set.
+	 * 
+	 */
 	public SQLemur(String driver, String url, String user, String password) {
+		this(driver, url, user, password, replicaUrls());
+	}
+
+	/**
+	 * Creates an instance writing to the given url and reading from the given
+	 * replicas, each with its own pool. Reads inside transactions, writes and
+	 * procedures go to the primary.
+	 * 
+	 * @param driver
+	 * @param url
+	 * @param user
+	 * @param password
+	 * @param replicaUrls
+	 */
+	public SQLemur(String driver, String url, String user, String password, List<String> replicaUrls) {
 		this.url = url;
 		this.driver = driver;
 		this.user = user;
 		this.password = password;
-		this.dataSource = this.initDatasource();
+		var config = SQLemurProperties.snapshot();
+		var startup = config.get(SQLemurConfig.STARTUP_MODE).trim().toLowerCase();
+		switch (startup) {
+		case "eager":
+		case "prewarm":
+			this.dataSource = this.initDatasource();
+			break;
+		case "lazy":
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unknown sqlemur.startup " + startup + ", expected eager, lazy or prewarm");
+		}
+		if (!replicaUrls.isEmpty())
+			this.replicaRouter = this.initReplicas(replicaUrls);
+		this.fetchSize = config.get(SQLemurConfig.QUERY_FETCH_SIZE);
+		this.batchSize = config.get(SQLemurConfig.BATCH_SIZE);
+		this.exportBufferSize = config.get(SQLemurConfig.EXPORT_BUFFER_SIZE);
+		this.emptyStringAsNull = config.get(SQLemurConfig.BIND_EMPTY_STRING_AS_NULL);
+		this.statementCache = new StatementCache(config.get(SQLemurConfig.STATEMENT_CACHE_SIZE));
+		var maxConcurrency = config.get(SQLemurConfig.TRANSACTION_MAX_CONCURRENCY);
+		if (maxConcurrency > 0)
+			this.concurrencyLimiter = new ConcurrencyLimiter(maxConcurrency, 1, maxConcurrency, 0.9);
+		var resultCacheWeight = config.get(SQLemurConfig.RESULT_CACHE_MAX_WEIGHT);
+		if (resultCacheWeight > 0)
+			this.resultCache = new ResultCache(resultCacheWeight,
+					Duration.ofMillis(config.get(SQLemurConfig.RESULT_CACHE_TTL_MILLIS)));
+		var slowQueryMillis = config.get(SQLemurConfig.SLOW_QUERY_THRESHOLD_MILLIS);
+		if (slowQueryMillis > 0) {
+			var slowQueryLog = SlowQueryLog.of(Duration.ofMillis(slowQueryMillis))
+					.redactColumns(config.get(SQLemurConfig.SLOW_QUERY_REDACT_COLUMNS).split(","));
+			var explain = config.get(SQLemurConfig.SLOW_QUERY_EXPLAIN);
+			if (!explain.isBlank())
+				slowQueryLog = slowQueryLog.explain(explain.strip() + " ",
+						Duration.ofMillis(config.get(SQLemurConfig.SLOW_QUERY_EXPLAIN_INTERVAL_MILLIS)));
+			addSlowQueryLog(slowQueryLog);
+		}
+		if (config.get(SQLemurConfig.CONFIG_RELOAD)) {
+			SQLemurProperties.addReloadListener(new ReconfigureListener(this));
+			SQLemurProperties.watch();
+		}
+		if (startup.equals("prewarm")) {
+			var hotQueries = new ArrayList<String>();
+			for (var hotQuery : config.get(SQLemurConfig.STARTUP_HOT_QUERIES).split(";")) {
+				if (!hotQuery.isBlank())
+					hotQueries.add(hotQuery.strip());
+			}
+			prewarm(hotQueries);
+		}
+	}
+
+	/**
+	 * Returns the data source of primary, creating it if startup is lazy.
+	 * 
+	 * @return
+	 */
+	private DataSource dataSource() {
+		var current = dataSource;
+		if (current == null) {
+			synchronized (this) {
+				current = dataSource;
+				if (current == null) {
+					current = initDatasource();
+					dataSource = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Opens sqlemur.pool.initialsize connections of primary and of every replica
+	 * in parallel, in the background, validating them and preparing the given
+	 * queries on each, so first requests neither wait for connections nor parse
+	 * hot queries. Connections are then returned to their pools. Prepared
+	 * statements are kept by the statement cache, if it is enabled.
+	 * 
+	 * @param hotQueries
+	 * @return a future completed when all connections are ready, failed if any
+	 *         could not be opened or validated, also returned by {@link #ready()}
+	 */
+	public CompletableFuture<Void> prewarm(Collection<String> hotQueries) {
+		var size = Math.min(SQLemurProperties.get(SQLemurConfig.POOL_INITIAL_SIZE),
+				SQLemurProperties.get(SQLemurConfig.POOL_MAX_SIZE));
+		var dataSources = new ArrayList<DataSource>();
+		var future = new CompletableFuture<Void>();
+		readiness = future;
+		Thread.ofVirtual().name("sqlemur-prewarm").start(() -> {
+			try {
+				dataSources.add(dataSource());
+				var router = replicaRouter;
+				if (router != null) {
+					for (var replica : router.getReplicas())
+						dataSources.add(replica.getDataSource());
+				}
+				var start = System.nanoTime();
+				prewarm(dataSources, size, List.copyOf(hotQueries));
+				LOGGER.log(Level.DEBUG, "Prewarmed " + size + " connections of " + dataSources.size() + " pools in "
+						+ (System.nanoTime() - start) / 1_000_000 + "ms");
+				future.complete(null);
+			} catch (Throwable t) {
+				LOGGER.log(Level.WARNING, "Prewarming pools failed", t);
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
+
+	private void prewarm(List<DataSource> dataSources, int size, List<String> hotQueries) throws Exception {
+		var opened = new ArrayList<CompletableFuture<Connection>>();
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (var source : dataSources) {
+				for (var i = 0; i < size; i++)
+					opened.add(CompletableFuture.supplyAsync(() -> warm(source, hotQueries), executor));
+			}
+			// connections are held until all are open, so every one is a different connection
+			CompletableFuture.allOf(opened.toArray(CompletableFuture<?>[]::new)).exceptionally(t -> null).join();
+		}
+		Exception error = null;
+		for (var connection : opened) {
+			try {
+				connection.join().close();
+			} catch (Exception e) {
+				var cause = e instanceof CompletionException && e.getCause() instanceof Exception c ? c : e;
+				if (error == null)
+					error = cause;
+				else
+					error.addSuppressed(cause);
+			}
+		}
+		if (error != null)
+			throw error;
+	}
+
+	private Connection warm(DataSource source, List<String> hotQueries) {
+		try {
+			var conn = source.getConnection();
+			try {
+				if (!conn.isValid(5))
+					throw new SQLException("Connection is not valid");
+				for (var hotQuery : hotQueries)
+					statementCache.release(conn, statementCache.prepare(conn, hotQuery));
+				return conn;
+			} catch (SQLException | RuntimeException e) {
+				conn.close();
+				throw e;
+			}
+		} catch (SQLException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * Returns a future completed when the instance is ready: right away unless
+	 * pools are prewarmed, when prewarming completes otherwise.
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Void> ready() {
+		return readiness;
+	}
+
+	/**
+	 * Re-applies pool properties to the pools of primary and replicas, resizing
+	 * them. Called on properties reload when sqlemur.config.reload is true.
+	 */
+	public void reconfigure() {
+		var current = dataSource;
+		if (current != null)
+			DatasourceFactory.applyPoolSettings(current);
+		var router = replicaRouter;
+		if (router != null) {
+			for (var replica : router.getReplicas())
+				DatasourceFactory.applyPoolSettings(replica.getDataSource());
+		}
+	}
+
+	/**
+	 * Reconfigures an instance on reload without keeping it reachable, removing
+	 * itself once the instance is collected.
+	 */
+	private static class ReconfigureListener implements Runnable {
+
+		private final WeakReference<SQLemur> instance;
+
+		private ReconfigureListener(SQLemur instance) {
+			this.instance = new WeakReference<>(instance);
+		}
+
+		@Override
+		public void run() {
+			var sqlemur = instance.get();
+			if (sqlemur != null)
+				sqlemur.reconfigure();
+			else
+				SQLemurProperties.removeReloadListener(this);
+		}
 	}
 
 	protected DataSource initDatasource() {
-		return DatasourceFactory.createDbcp2Datasource(getDriver(), getUrl(), getUser(), getPassword());
+		return DatasourceFactory.createDatasource(getDriver(), getUrl(), getUser(), getPassword());
+	}
+
+	/**
+	 * Creates the router of reads, balancing replicas by
+	 * sqlemur.replica.loadbalancer property: roundrobin (default), leastinflight
+	 * or latency.
+	 * 
+	 * @param replicaUrls
+	 * @return
+	 */
+	protected ReplicaRouter initReplicas(List<String> replicaUrls) {
+		var dataSources = new ArrayList<DataSource>(replicaUrls.size());
+		for (var replicaUrl : replicaUrls)
+			dataSources.add(DatasourceFactory.createDatasource(getDriver(), replicaUrl, getUser(), getPassword()));
+		var loadBalancer = SQLemurProperties.get(SQLemurConfig.REPLICA_LOAD_BALANCER);
+		return new ReplicaRouter(replicaUrls, dataSources, LoadBalancer.of(loadBalancer));
+	}
+
+	private static List<String> replicaUrls() {
+		var urls = SQLemurProperties.get(SQLemurConfig.REPLICA_URLS);
+		var replicaUrls = new ArrayList<String>();
+		for (var replicaUrl : urls.split(",")) {
+			if (!replicaUrl.isBlank())
+				replicaUrls.add(replicaUrl.trim());
+		}
+		return replicaUrls;
 	}
 
 	/**
-	 * Creates a jdbc prepared statement for given query and params.
+	 * Creates a jdbc prepared statement for given query and params, or reuses a
+	 * cached one. Statement must be given back with
+	 * {@link #releaseStatement(Connection, PreparedStatement)}.
 	 * 
 	 * @param conn
 	 * @param query
@@ -48,23 +339,248 @@ public class SQLemur {
 	 */
 	private PreparedStatement prepareStatementWithParams(Connection conn, String query, List<Object> params)
 			throws SQLException {
-		var statement = conn.prepareStatement(query);
-		var i = 1;
-		for (var param : params) {
-			if (param == null || param.toString().equals(""))
-				statement.setNull(i++, Types.VARCHAR);
-			else if (param instanceof byte[]) {
-				statement.setBytes(i++, (byte[]) param);
-			} else
-				statement.setObject(i++, param);
+		var statement = statementCache.prepare(conn, query);
+		try {
+			return bindParams(statement, params);
+		} catch (SQLException e) {
+			statementCache.release(conn, statement);
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives back a statement created by
+	 * {@link #prepareStatementWithParams(Connection, String, List)}, to be reused
+	 * by next calls of the same query.
+	 * 
+	 * @param conn
+	 * @param statement
+	 * @throws SQLException
+	 */
+	private void releaseStatement(Connection conn, PreparedStatement statement) throws SQLException {
+		statementCache.release(conn, statement);
+	}
+
+	/**
+	 * Creates a forward only, read only jdbc prepared statement for given query and params,
+	 * fetching rows in batches of the given size.
+	 * 
+	 * @param conn
+	 * @param query
+	 * @param params
+	 * @param fetchSize
+	 * @return
+	 * @throws SQLException
+	 */
+	private PreparedStatement prepareStatementWithParams(Connection conn, String query, List<Object> params,
+			int fetchSize) throws SQLException {
+		var statement = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			statement.setFetchSize(fetchSize);
+			return bindParams(statement, params);
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
 		}
+	}
+
+	private PreparedStatement bindParams(PreparedStatement statement, List<Object> params) throws SQLException {
+		if (params instanceof Params typed) {
+			typed.bindTo(statement, emptyStringAsNull);
+			return statement;
+		}
+		var i = 1;
+		for (var param : params)
+			ParamBinders.bind(statement, i++, param, emptyStringAsNull);
 
 		return statement;
 	}
 
+	/**
+	 * Closes the async executor, cached statements, the pool of primary and the
+	 * pools of replicas, stopping the probing of ejected replicas. Async tasks
+	 * still waiting for a slot fail without running.
+	 * 
+	 * @throws SQLException
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (asyncExecutor != null)
+			asyncExecutor.close();
+		statementCache.clear();
+		try {
+			if (replicaRouter != null)
+				replicaRouter.close();
+		} finally {
+			DatasourceFactory.close(dataSource);
+		}
+	}
+
 	public void checkConnection() throws SQLException {
-		try (var conn = dataSource.getConnection();) {
+		try (var conn = dataSource().getConnection();) {
+		}
+	}
+
+	/**
+	 * Registers a listener notified after every query, update, batch, procedure
+	 * and transaction executed by this instance.
+	 * 
+	 * @param listener
+	 */
+	public void addQueryListener(QueryListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeQueryListener(QueryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Registers a slow query log, explaining slow queries on connections of this
+	 * instance's pool if explain is enabled.
+	 * 
+	 * @param slowQueryLog
+	 * @return the registered listener, to be removed by
+	 *         {@link #removeQueryListener(QueryListener)}
+	 */
+	public QueryListener addSlowQueryLog(SlowQueryLog slowQueryLog) {
+		var listener = slowQueryLog.connections(this::getConnection);
+		addQueryListener(listener);
+		return listener;
+	}
+
+	private QueryTrace trace(QueryType type, String query, List<Object> params) {
+		return listeners.isEmpty() ? QueryTrace.DISABLED : new QueryTrace(listeners, type, query, params);
+	}
+
+	/**
+	 * Runs call with a new trace, which is finished (and reported to listeners)
+	 * when call returns or fails.
+	 * 
+	 */
+	private <T> T traced(QueryType type, String query, List<Object> params, TracedCall<T> call) throws SQLException {
+		var trace = trace(type, query, params);
+		try {
+			return call.call(trace);
+		} catch (Throwable t) {
+			trace.failed(t);
+			throw t;
+		} finally {
+			trace.finish();
+		}
+	}
+
+	@FunctionalInterface
+	private interface TracedCall<T> {
+		public T call(QueryTrace trace) throws SQLException;
+	}
+
+	private Connection acquire(QueryTrace trace) throws SQLException {
+		var conn = getConnection();
+		trace.acquired();
+		return conn;
+	}
+
+	/**
+	 * Borrows a connection for reading, from a replica unless there are none
+	 * healthy or a transaction runs on this thread.
+	 * 
+	 */
+	private Connection acquireRead(QueryTrace trace) throws SQLException {
+		var router = replicaRouter;
+		if (router == null || transactionWrites.get() != null)
+			return acquire(trace);
+		var conn = router.getConnection();
+		if (conn == null)
+			return acquire(trace);
+		trace.acquired();
+		return conn;
+	}
+
+	/**
+	 * Runs call with a connection borrowed for reading, reporting failures to the
+	 * replica router.
+	 * 
+	 */
+	private <T> T read(QueryTrace trace, ConnectionCall<T> call) throws SQLException {
+		try (var conn = acquireRead(trace)) {
+			try {
+				return call.call(conn);
+			} catch (SQLException e) {
+				if (replicaRouter != null)
+					replicaRouter.failed(conn, e);
+				throw e;
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface ConnectionCall<T> {
+		public T call(Connection conn) throws SQLException;
+	}
+
+	private void query(Connection conn, String query, List<Object> params, ResultSetAction action, QueryTrace trace)
+			throws SQLException {
+		var statement = prepareStatementWithParams(conn, query, params);
+		try (var rset = statement.executeQuery();) {
+			trace.executed();
+			while (rset.next()) {
+				trace.fetched();
+				action.onResultSet(rset);
+				trace.mapped();
+			}
+			trace.fetched();
+		} finally {
+			releaseStatement(conn, statement);
+		}
+	}
+
+	private <T> T queryFirst(Connection conn, String query, List<Object> params, RowMapper<T> mapper,
+			QueryTrace trace) throws SQLException {
+		var statement = prepareStatementWithParams(conn, query, params);
+		try (var rset = statement.executeQuery();) {
+			trace.executed();
+			while (rset.next()) {
+				trace.fetched();
+				var row = mapper.map(rset);
+				trace.mapped();
+				return row;
+			}
+			trace.fetched();
+		} finally {
+			releaseStatement(conn, statement);
 		}
+		return null;
+	}
+
+	private int update(Connection conn, String query, List<Object> params, QueryTrace trace) throws SQLException {
+		var statement = prepareStatementWithParams(conn, query, params);
+		try {
+			var count = statement.executeUpdate();
+			trace.executed();
+			trace.updated(count);
+			return count;
+		} finally {
+			releaseStatement(conn, statement);
+			written(query);
+		}
+	}
+
+	/**
+	 * Invalidates cached results depending on the table written by query, or
+	 * defers it to the end of the transaction running on this thread. Writes on a
+	 * connection of the caller outside a transaction are invalidated right away,
+	 * as their commit is not known.
+	 * 
+	 */
+	private void written(String query) {
+		if (resultCache == null)
+			return;
+		var writes = transactionWrites.get();
+		if (writes != null)
+			writes.add(query);
+		else
+			resultCache.invalidateWrittenBy(query);
 	}
 
 	/**
@@ -72,9 +588,10 @@ public class SQLemur {
 	 * 
 	 */
 	public void executeQuery(String query, ResultSetAction action) throws SQLException {
-		try (var conn = dataSource.getConnection()) {
-			executeQuery(conn, query, action);
-		}
+		traced(QueryType.QUERY, query, EMPTY_LIST, trace -> read(trace, conn -> {
+			query(conn, query, action, trace);
+			return null;
+		}));
 	}
 
 	
@@ -83,11 +600,22 @@ public class SQLemur {
 	 * 
 	 */
 	public void executeQuery(Connection conn, String query, ResultSetAction action) throws SQLException {
+		traced(QueryType.QUERY, query, EMPTY_LIST, trace -> {
+			query(conn, query, action, trace);
+			return null;
+		});
+	}
+
+	private void query(Connection conn, String query, ResultSetAction action, QueryTrace trace) throws SQLException {
 		try (var statement = conn.createStatement(); var rset = statement.executeQuery(query);) {
+			trace.executed();
 			while (rset.next()) {
+				trace.fetched();
 				if (action != null)
 					action.onResultSet(rset);
+				trace.mapped();
 			}
+			trace.fetched();
 		}
 	}
 
@@ -96,9 +624,10 @@ public class SQLemur {
 	 * 
 	 */
 	public void executeQuery(String query, List<Object> params, ResultSetAction action) throws SQLException {
-		try (var conn = dataSource.getConnection()) {
-			executeQuery(conn, query, params, action);
-		}
+		traced(QueryType.QUERY, query, params, trace -> read(trace, conn -> {
+			query(conn, query, params, action, trace);
+			return null;
+		}));
 	}
 
 	/**
@@ -107,12 +636,10 @@ public class SQLemur {
 	 */
 	public void executeQuery(Connection conn, String query, List<Object> params, ResultSetAction action)
 			throws SQLException {
-		try (var statement = prepareStatementWithParams(conn, query, params);
-				var rset = statement.executeQuery();) {
-			while (rset.next()) {
-				action.onResultSet(rset);
-			}
-		}
+		traced(QueryType.QUERY, query, params, trace -> {
+			query(conn, query, params, action, trace);
+			return null;
+		});
 	}
 
 	/**
@@ -124,19 +651,23 @@ public class SQLemur {
 		return executeQueryToList(query, EMPTY_LIST);
 	}
 
-	private LinkedHashMap<String, Object> map(ResultSet rset) throws SQLException {
+	private RowMapper<Row> rowMapper() {
+		return isCcMode() ? ORMUtils.rowMapperCC() : ORMUtils.rowMapper();
+	}
+
+	private <T> RowMapper<T> rowMapper(Class<?> clazz) throws SQLException {
 		try {
-			return isCcMode() ? ORMUtils.mapCC(rset) : ORMUtils.map(rset);
+			return ORMUtils.rowMapper(clazz);
 		} catch (Exception e) {
 			throw new SQLException("Could not map result set", e);
 		}
 	}
 
-	private <T> T map(ResultSet rset, Class<?> clazz) throws SQLException {
+	private ClassMapper<?> classMapper(Class<?> clazz) throws SQLException {
 		try {
-			return ORMUtils.map(rset, clazz);
-		} catch (Exception e) {
-			throw new SQLException("Could not map result set", e);
+			return ClassMapper.of(clazz);
+		} catch (ReflectiveOperationException e) {
+			throw new SQLException("Could not map class " + clazz.getName(), e);
 		}
 	}
 
@@ -159,14 +690,31 @@ public class SQLemur {
 		return this.isCcMode;
 	}
 
+	/**
+	 * Sets whether empty string params are bound as null, for databases where
+	 * they are the same (ex oracle). Defaults to sqlemur.bind.emptystringasnull
+	 * property, false if not set.
+	 * 
+	 * @param emptyStringAsNull
+	 */
+	public void setEmptyStringAsNull(boolean emptyStringAsNull) {
+		this.emptyStringAsNull = emptyStringAsNull;
+	}
+
+	public boolean isEmptyStringAsNull() {
+		return emptyStringAsNull;
+	}
+
 	/**
 	 * Executes query. It tries to map rows to map. You have to cast the result. It
 	 * throws unchecked exceptions.
+	 * Rows are {@link Row} instances sharing the keys computed once for the result set.
 	 * 
 	 */
 	public ArrayList<Map<String, Object>> executeQueryToList(String query, List<Object> params) throws SQLException {
 		var l = new ArrayList<Map<String, Object>>();
-		executeQuery(query, params, rset -> l.add(map(rset)));
+		var mapper = rowMapper();
+		executeQuery(query, params, rset -> l.add(mapper.map(rset)));
 		return l;
 	}
 
@@ -200,7 +748,8 @@ public class SQLemur {
 	@SuppressWarnings("unchecked")
 	public <T> T executeQueryToList(String query, List<Object> params, Class<?> clazz) throws SQLException {
 		var l = new ArrayList<>();
-		executeQuery(query, params, rset -> l.add(map(rset, clazz)));
+		var mapper = rowMapper(clazz);
+		executeQuery(query, params, rset -> l.add(mapper.map(rset)));
 		return (T) l;
 	}
 
@@ -214,133 +763,1022 @@ public class SQLemur {
 	@SuppressWarnings("unchecked")
 	public <T> T executeQueryToList(Connection conn, String query, List<Object> params, Class<?> clazz) throws SQLException {
 		var l = new ArrayList<>();
-		executeQuery(conn, query, params, rset -> l.add(map(rset, clazz)));
+		var mapper = rowMapper(clazz);
+		executeQuery(conn, query, params, rset -> l.add(mapper.map(rset)));
 		return (T) l;
 	}
 	
 	/**
-	 * Executes query. It tries to map first row of result set to a map. Run this if
-	 * you expect your query to have a single row result set. You have to cast the
-	 * result. It throws unchecked exceptions.
+	 * Returns hits, misses, evictions and size of the prepared statements cache.
+	 * Cache size per connection is set by sqlemur.statementcache.size property
+	 * (default 64, 0 disables caching).
 	 * 
+	 * @return
 	 */
-	public Map<String, Object> executeQueryToMap(String query) throws SQLException {
-		return executeQueryToMap(query, EMPTY_LIST);
+	public StatementCache.Stats getStatementCacheStats() {
+		return statementCache.getStats();
 	}
 
 	/**
-	 * Executes query. It tries to map first row of result set to a map. Run this if
-	 * you expect your query to have a single row result set. You have to cast the
-	 * result. It throws unchecked exceptions.
+	 * Returns the router of reads to replicas, or null if there are no replicas.
+	 * It is closed by {@link #close()}.
 	 * 
+	 * @return
 	 */
-	public Map<String, Object> executeQueryToMap(String query, List<Object> params) throws SQLException {
-		try (var conn = dataSource.getConnection();
-				var statement = prepareStatementWithParams(conn, query, params);
-				var rset = statement.executeQuery();) {
-			while (rset.next()) {
-				return map(rset);
-			}
-		}
-		return null;
+	public ReplicaRouter getReplicaRouter() {
+		return replicaRouter;
 	}
 
 	/**
-	 * Executes query. It tries to map first row of result set to the given class.
-	 * Run this if you expect your query to have a single row result set. You have
-	 * to cast the result. It throws unchecked exceptions.
+	 * Returns the cache of executeCachedQuery methods, or null if it is disabled.
+	 * It is enabled by sqlemur.resultcache.maxweight property (max rows cached,
+	 * default 0 disables caching) with entries living for
+	 * sqlemur.resultcache.ttlmillis (default 60000).
 	 * 
+	 * @return
 	 */
-	public <T> T executeQueryToObject(String query, Class<?> clazz) throws SQLException {
-		return executeQueryToObject(query, EMPTY_LIST, clazz);
+	public ResultCache getResultCache() {
+		return resultCache;
 	}
 
 	/**
-	 * Executes query with the provided connection. It tries to map first row of result set to the given class.
-	 * Run this if you expect your query to have a single row result set. You have
-	 * to cast the result. It throws unchecked exceptions.
+	 * Sets the cache of executeCachedQuery methods, null disables caching.
 	 * 
+	 * @param resultCache
 	 */
-	public <T> T executeQueryToObject(Connection conn, String query, Class<?> clazz) throws SQLException {
-		return executeQueryToObject(conn, query, EMPTY_LIST, clazz);
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
 	}
-	
+
 	/**
-	 * Executes query. It tries to map first row of result set to the given class.
-	 * Run this if you expect your query to have a single row result set. You have
-	 * to cast the result. It throws unchecked exceptions.
+	 * Executes query or returns its cached result. It tries to map rows to map.
+	 * Results are shared between callers and must not be modified. Cached results
+	 * are invalidated by updates of this instance writing to any of the given
+	 * tables, or to the tables of query from and join clauses if none is given.
+	 * Updates in a transaction invalidate them when it ends.
 	 * 
+	 * @param query
+	 * @param params
+	 * @param ttl    time to live, null for the default one of cache
+	 * @param tables
+	 * @return
+	 * @throws SQLException
 	 */
-	public <T> T executeQueryToObject(String query, List<Object> params, Class<?> clazz) throws SQLException {
-		try (var conn = dataSource.getConnection()) {
-			return executeQueryToObject(conn, query, params, clazz);
-		}
+	public List<Map<String, Object>> executeCachedQueryToList(String query, List<Object> params, Duration ttl,
+			String... tables) throws SQLException {
+		return cached(query, params, isCcMode() ? "list cc" : "list", ttl, tables,
+				() -> Collections.unmodifiableList(executeQueryToList(query, params)));
 	}
 
 	/**
-	 * Executes query with the provided connection. It tries to map first row of result set to the given class.
-	 * Run this if you expect your query to have a single row result set. You have
-	 * to cast the result. It throws unchecked exceptions.
+	 * Executes query or returns its cached result. It tries to map rows to the
+	 * given class. Results are shared between callers and must not be modified.
 	 * 
+	 * @see #executeCachedQueryToList(String, List, Duration, String...)
 	 */
-	public <T> T executeQueryToObject(Connection conn, String query, List<Object> params, Class<?> clazz) throws SQLException {
-		try (var statement = prepareStatementWithParams(conn, query, params);
-				var rset = statement.executeQuery();) {
-			while (rset.next()) {
-				return map(rset, clazz);
-			}
-		}
-		return null;
+	public <T> List<T> executeCachedQueryToList(String query, List<Object> params, Class<?> clazz, Duration ttl,
+			String... tables) throws SQLException {
+		return cached(query, params, clazz, ttl, tables,
+				() -> Collections.unmodifiableList(this.<List<T>>executeQueryToList(query, params, clazz)));
 	}
-	
+
 	/**
-	 * Executes update query.
+	 * Executes query or returns its cached result. It tries to map first row of
+	 * result set to a map. Results are shared between callers and must not be
+	 * modified.
 	 * 
-	 * @param query
-	 * @return
-	 * @throws SQLException
+	 * @see #executeCachedQueryToList(String, List, Duration, String...)
 	 */
-	public int executeUpdate(String query) throws SQLException {
-		return executeUpdate(query, EMPTY_LIST);
+	public Map<String, Object> executeCachedQueryToMap(String query, List<Object> params, Duration ttl,
+			String... tables) throws SQLException {
+		return cached(query, params, isCcMode() ? "map cc" : "map", ttl, tables,
+				() -> executeQueryToMap(query, params));
 	}
 
 	/**
-	 * Executes update query with the provided connection.
+	 * Executes query or returns its cached result. It tries to map first row of
+	 * result set to the given class. Results are shared between callers and must
+	 * not be modified.
 	 * 
-	 * @param query
-	 * @return
-	 * @throws SQLException
+	 * @see #executeCachedQueryToList(String, List, Duration, String...)
 	 */
-	public int executeUpdate(Connection conn, String query) throws SQLException {
-		return executeUpdate(conn, query, EMPTY_LIST);
+	public <T> T executeCachedQueryToObject(String query, List<Object> params, Class<?> clazz, Duration ttl,
+			String... tables) throws SQLException {
+		return cached(query, params, List.of("object", clazz), ttl, tables,
+				() -> this.<T>executeQueryToObject(query, params, clazz));
 	}
-	
+
+	private <T> T cached(String query, List<Object> params, Object mapping, Duration ttl, String[] tables,
+			SqlCallable<T> loader) throws SQLException {
+		var cache = resultCache;
+		if (cache == null)
+			return loader.call();
+		return cache.get(query, params, mapping, ttl, List.of(tables), loader);
+	}
+
 	/**
-	 * Executes update query.
+	 * Returns the number of rows fetched from database per round trip by streaming queries.
 	 * 
-	 * @param query
-	 * @param params
 	 * @return
-	 * @throws SQLException
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows fetched from database per round trip by streaming
+	 * queries. Defaults to sqlemur.query.fetchsize property or 1000.
+	 * 
+	 * @param fetchSize
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Executes query and returns an iterator over its rows mapped to maps. Rows are
+	 * read lazily through a forward only cursor. The iterator holds a pooled
+	 * connection until it is exhausted or closed.
+	 * 
+	 */
+	public ResultSetIterator<Map<String, Object>> iterate(String query, List<Object> params) throws SQLException {
+		return iterate(query, params, fetchSize);
+	}
+
+	/**
+	 * Executes query and returns an iterator over its rows mapped to maps, fetching
+	 * the given number of rows per round trip. The iterator holds a pooled
+	 * connection until it is exhausted or closed.
+	 * 
+	 */
+	public ResultSetIterator<Map<String, Object>> iterate(String query, List<Object> params, int fetchSize)
+			throws SQLException {
+		return openIterator(query, params, fetchSize, rowMapper()::map);
+	}
+
+	/**
+	 * Executes query and returns an iterator over its rows mapped to the given
+	 * class. Rows are read lazily through a forward only cursor. The iterator holds
+	 * a pooled connection until it is exhausted or closed.
+	 * 
+	 */
+	public <T> ResultSetIterator<T> iterate(String query, List<Object> params, Class<?> clazz) throws SQLException {
+		return iterate(query, params, clazz, fetchSize);
+	}
+
+	/**
+	 * Executes query and returns an iterator over its rows mapped to the given
+	 * class, fetching the given number of rows per round trip. The iterator holds a
+	 * pooled connection until it is exhausted or closed.
+	 * 
+	 */
+	public <T> ResultSetIterator<T> iterate(String query, List<Object> params, Class<?> clazz, int fetchSize)
+			throws SQLException {
+		return openIterator(query, params, fetchSize, rowMapper(clazz));
+	}
+
+	/**
+	 * Executes query and returns a lazy stream of its rows mapped to maps. Stream
+	 * must be closed, in order to return its connection to the pool.
+	 * 
+	 */
+	public Stream<Map<String, Object>> stream(String query, List<Object> params) throws SQLException {
+		return iterate(query, params).stream();
+	}
+
+	/**
+	 * Executes query and returns a lazy stream of its rows mapped to maps, fetching
+	 * the given number of rows per round trip. Stream must be closed, in order to
+	 * return its connection to the pool.
+	 * 
+	 */
+	public Stream<Map<String, Object>> stream(String query, List<Object> params, int fetchSize) throws SQLException {
+		return iterate(query, params, fetchSize).stream();
+	}
+
+	/**
+	 * Executes query and returns a lazy stream of its rows mapped to the given
+	 * class. Stream must be closed, in order to return its connection to the pool.
+	 * 
+	 */
+	public <T> Stream<T> stream(String query, List<Object> params, Class<?> clazz) throws SQLException {
+		return this.<T>iterate(query, params, clazz).stream();
+	}
+
+	/**
+	 * Executes query and returns a lazy stream of its rows mapped to the given
+	 * class, fetching the given number of rows per round trip. Stream must be
+	 * closed, in order to return its connection to the pool.
+	 * 
+	 */
+	public <T> Stream<T> stream(String query, List<Object> params, Class<?> clazz, int fetchSize)
+			throws SQLException {
+		return this.<T>iterate(query, params, clazz, fetchSize).stream();
+	}
+
+	private <T> ResultSetIterator<T> openIterator(String query, List<Object> params, int fetchSize,
+			RowMapper<T> mapper) throws SQLException {
+		var trace = trace(QueryType.QUERY, query, params);
+		Connection conn;
+		try {
+			conn = acquireRead(trace);
+		} catch (Throwable t) {
+			trace.failed(t);
+			trace.finish();
+			throw t;
+		}
+		PreparedStatement statement = null;
+		var restoreAutoCommit = false;
+		try {
+			// some drivers (ex postgresql) use a cursor only inside a transaction,
+			// otherwise they read the whole result set ignoring fetch size
+			if (conn.getAutoCommit()) {
+				conn.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			statement = prepareStatementWithParams(conn, query, params, fetchSize);
+			var rset = statement.executeQuery();
+			trace.executed();
+			return new ResultSetIterator<>(conn, statement, rset, mapper, restoreAutoCommit, trace);
+		} catch (Throwable t) {
+			trace.failed(t);
+			trace.finish();
+			if (replicaRouter != null && t instanceof SQLException e)
+				replicaRouter.failed(conn, e);
+			try (conn) {
+				if (statement != null)
+					statement.close();
+				if (restoreAutoCommit) {
+					rollbackQuitely(conn);
+					conn.setAutoCommit(true);
+				}
+			}
+			throw t;
+		}
+	}
+
+	/**
+	 * Executes query and stores its rows by column. Numeric and boolean columns
+	 * are kept in primitive arrays, without boxing their values.
+	 * 
+	 * @param query
+	 * @return
+	 * @throws SQLException
+	 */
+	public ColumnFrame executeQueryToColumns(String query) throws SQLException {
+		return executeQueryToColumns(query, EMPTY_LIST);
+	}
+
+	/**
+	 * Executes query and stores its rows by column. Numeric and boolean columns
+	 * are kept in primitive arrays, without boxing their values.
+	 * 
+	 * @param query
+	 * @param params
+	 * @return
+	 * @throws SQLException
+	 */
+	public ColumnFrame executeQueryToColumns(String query, List<Object> params) throws SQLException {
+		return traced(QueryType.QUERY, query, params,
+				trace -> read(trace, conn -> queryToColumns(conn, query, params, trace)));
+	}
+
+	/**
+	 * Executes query with the provided connection and stores its rows by column.
+	 * 
+	 * @param conn
+	 * @param query
+	 * @param params
+	 * @return
+	 * @throws SQLException
+	 */
+	public ColumnFrame executeQueryToColumns(Connection conn, String query, List<Object> params)
+			throws SQLException {
+		return traced(QueryType.QUERY, query, params, trace -> queryToColumns(conn, query, params, trace));
+	}
+
+	private ColumnFrame queryToColumns(Connection conn, String query, List<Object> params, QueryTrace trace)
+			throws SQLException {
+		var statement = prepareStatementWithParams(conn, query, params);
+		try (var rset = statement.executeQuery();) {
+			trace.executed();
+			var frame = ColumnFrame.read(rset, isCcMode());
+			trace.fetched();
+			trace.updated(frame.size());
+			return frame;
+		} finally {
+			releaseStatement(conn, statement);
+		}
+	}
+
+	/**
+	 * Executes query and writes its rows to the given stream in the given format,
+	 * without mapping them. Rows are read through a forward only cursor, fetching
+	 * {@link #getFetchSize()} rows per round trip, and encoded into a buffer of
+	 * sqlemur.export.buffersize bytes (64KB by default), so memory stays constant
+	 * however many rows are exported. Column names are converted to camel case in
+	 * cc mode. Stream is flushed but not closed.
+	 * 
+	 * @param query
+	 * @param params
+	 * @param format
+	 * @param out
+	 * @return the number of rows written
+	 * @throws SQLException if query fails or stream can not be written
+	 */
+	public long exportQuery(String query, List<Object> params, ExportFormat format, OutputStream out)
+			throws SQLException {
+		return export(query, params, format, (exporter, rset) -> exporter.export(rset, out));
+	}
+
+	/**
+	 * Executes query and writes its rows to the given channel in the given format,
+	 * without mapping them. Channel is not closed.
+	 * 
+	 * @see #exportQuery(String, List, ExportFormat, OutputStream)
+	 * @param query
+	 * @param params
+	 * @param format
+	 * @param channel
+	 * @return the number of rows written
+	 * @throws SQLException if query fails or channel can not be written
+	 */
+	public long exportQuery(String query, List<Object> params, ExportFormat format, WritableByteChannel channel)
+			throws SQLException {
+		return export(query, params, format, (exporter, rset) -> exporter.export(rset, channel));
+	}
+
+	private long export(String query, List<Object> params, ExportFormat format, ExportCall call)
+			throws SQLException {
+		var exporter = new ResultSetExporter(format, isCcMode(), exportBufferSize);
+		return traced(QueryType.QUERY, query, params, trace -> read(trace, conn -> {
+			// some drivers (ex postgresql) use a cursor only inside a transaction
+			var restoreAutoCommit = conn.getAutoCommit();
+			if (restoreAutoCommit)
+				conn.setAutoCommit(false);
+			try (var statement = prepareStatementWithParams(conn, query, params, fetchSize);
+					var rset = statement.executeQuery()) {
+				trace.executed();
+				var rows = call.export(exporter, rset);
+				trace.fetched();
+				trace.updated(rows);
+				return rows;
+			} catch (IOException e) {
+				throw new SQLException("Could not write export of query: " + e.getMessage(), e);
+			} finally {
+				if (restoreAutoCommit) {
+					rollbackQuitely(conn);
+					conn.setAutoCommit(true);
+				}
+			}
+		}));
+	}
+
+	@FunctionalInterface
+	private interface ExportCall {
+		public long export(ResultSetExporter exporter, ResultSet rset) throws SQLException, IOException;
+	}
+
+	/**
+	 * Executes the slices of query concurrently, each on its own pooled
+	 * connection, and merges their rows mapped to maps. Slices run outside of
+	 * any transaction of the calling thread.
+	 * 
+	 * @param query
+	 * @param params
+	 * @param partitioning
+	 * @return
+	 * @throws SQLException
+	 */
+	public ArrayList<Map<String, Object>> executePartitionedQueryToList(String query, List<Object> params,
+			Partitioning partitioning) throws SQLException {
+		return new ArrayList<>(this.<Map<String, Object>>partitioned(query, params, partitioning, this::rowMapper)
+				.toList());
+	}
+
+	/**
+	 * Executes the slices of query concurrently, each on its own pooled
+	 * connection, and merges their rows mapped to the given class.
+	 * 
+	 * @see #executePartitionedQueryToList(String, List, Partitioning)
+	 */
+	public <T> List<T> executePartitionedQueryToList(String query, List<Object> params, Class<?> clazz,
+			Partitioning partitioning) throws SQLException {
+		return this.<T>partitioned(query, params, partitioning, () -> rowMapper(clazz)).toList();
+	}
+
+	/**
+	 * Executes the slices of query concurrently and returns a stream of their rows
+	 * mapped to maps, as slices complete. Closing the stream cancels slices not
+	 * started yet.
+	 * 
+	 * @see #executePartitionedQueryToList(String, List, Partitioning)
+	 */
+	public Stream<Map<String, Object>> streamPartitioned(String query, List<Object> params, Partitioning partitioning) {
+		return this.<Map<String, Object>>partitioned(query, params, partitioning, this::rowMapper).stream();
+	}
+
+	/**
+	 * Executes the slices of query concurrently and returns a stream of their rows
+	 * mapped to the given class, as slices complete. Closing the stream cancels
+	 * slices not started yet.
+	 * 
+	 * @see #executePartitionedQueryToList(String, List, Partitioning)
+	 */
+	public <T> Stream<T> streamPartitioned(String query, List<Object> params, Class<?> clazz,
+			Partitioning partitioning) {
+		return this.<T>partitioned(query, params, partitioning, () -> rowMapper(clazz)).stream();
+	}
+
+	private <T> PartitionedQuery<T> partitioned(String query, List<Object> params, Partitioning partitioning,
+			SqlCallable<RowMapper<? extends T>> mappers) {
+		var slices = partitioning.getSlices();
+		var parallelism = partitioning.getParallelism() > 0 ? partitioning.getParallelism() : defaultParallelism();
+		return new PartitionedQuery<T>(slices.size(), parallelism, partitioning.isOrdered(), i -> {
+			var slice = slices.get(i);
+			var rows = new ArrayList<T>();
+			var mapper = mappers.call();
+			executeQuery(partitioning.query(query, slice), partitioning.params(params, slice),
+					rset -> rows.add(mapper.map(rset)));
+			return rows;
+		});
+	}
+
+	/**
+	 * Executes query page by page, continuing every page after the keys of the
+	 * last row of the previous one, and returns its pages of rows mapped to maps.
+	 * Pages are fetched lazily, each on a pooled connection of its own while the
+	 * previous page is processed. Pages run outside of any transaction of the
+	 * calling thread.
+	 * 
+	 * @param query
+	 * @param params
+	 * @param keyset
+	 * @return
+	 */
+	public KeysetPages<Map<String, Object>> paginate(String query, List<Object> params, Keyset keyset) {
+		return paginate(query, params, keyset, this::rowMapper);
+	}
+
+	/**
+	 * Executes query page by page, continuing every page after the keys of the
+	 * last row of the previous one, and returns its pages of rows mapped to the
+	 * given class. Keys are read from the result set, they do not need to be
+	 * mapped by the class.
+	 * 
+	 * @see #paginate(String, List, Keyset)
+	 * @param query
+	 * @param params
+	 * @param clazz
+	 * @param keyset
+	 * @return
+	 */
+	public <T> KeysetPages<T> paginate(String query, List<Object> params, Class<?> clazz, Keyset keyset) {
+		return paginate(query, params, keyset, () -> rowMapper(clazz));
+	}
+
+	private <T> KeysetPages<T> paginate(String query, List<Object> params, Keyset keyset,
+			SqlCallable<RowMapper<? extends T>> mappers) {
+		var pageSize = keyset.getPageSize();
+		return new KeysetPages<T>(keys -> {
+			var rows = new ArrayList<T>(pageSize);
+			var next = new Object[1][];
+			var mapper = mappers.call();
+			executeQuery(keyset.query(query, keys == null), keyset.params(params, keys), rset -> {
+				rows.add(mapper.map(rset));
+				// a page with fewer rows is the last one
+				if (rows.size() == pageSize)
+					next[0] = keyset.keys(rset);
+			});
+			return new KeysetPages.Page<>(rows, next[0]);
+		});
+	}
+
+	/**
+	 * Executes query. It tries to map first row of result set to a map. Run this if
+	 * you expect your query to have a single row result set. You have to cast the
+	 * result. It throws unchecked exceptions.
+	 * 
+	 */
+	public Map<String, Object> executeQueryToMap(String query) throws SQLException {
+		return executeQueryToMap(query, EMPTY_LIST);
+	}
+
+	/**
+	 * Executes query. It tries to map first row of result set to a map. Run this if
+	 * you expect your query to have a single row result set. You have to cast the
+	 * result. It throws unchecked exceptions.
+	 * 
+	 */
+	public Map<String, Object> executeQueryToMap(String query, List<Object> params) throws SQLException {
+		return traced(QueryType.QUERY, query, params,
+				trace -> read(trace, conn -> queryFirst(conn, query, params, rowMapper(), trace)));
+	}
+
+	/**
+	 * Executes query. It tries to map first row of result set to the given class.
+	 * Run this if you expect your query to have a single row result set. You have
+	 * to cast the result. It throws unchecked exceptions.
+	 * 
+	 */
+	public <T> T executeQueryToObject(String query, Class<?> clazz) throws SQLException {
+		return executeQueryToObject(query, EMPTY_LIST, clazz);
+	}
+
+	/**
+	 * Executes query with the provided connection. It tries to map first row of result set to the given class.
+	 * Run this if you expect your query to have a single row result set. You have
+	 * to cast the result. It throws unchecked exceptions.
+	 * 
+	 */
+	public <T> T executeQueryToObject(Connection conn, String query, Class<?> clazz) throws SQLException {
+		return executeQueryToObject(conn, query, EMPTY_LIST, clazz);
+	}
+	
+	/**
+	 * Executes query. It tries to map first row of result set to the given class.
+	 * Run this if you expect your query to have a single row result set. You have
+	 * to cast the result. It throws unchecked exceptions.
+	 * 
+	 */
+	public <T> T executeQueryToObject(String query, List<Object> params, Class<?> clazz) throws SQLException {
+		return traced(QueryType.QUERY, query, params,
+				trace -> read(trace, conn -> queryFirst(conn, query, params, this.<T>rowMapper(clazz), trace)));
+	}
+
+	/**
+	 * Executes query with the provided connection. It tries to map first row of result set to the given class.
+	 * Run this if you expect your query to have a single row result set. You have
+	 * to cast the result. It throws unchecked exceptions.
+	 * 
+	 */
+	public <T> T executeQueryToObject(Connection conn, String query, List<Object> params, Class<?> clazz) throws SQLException {
+		return traced(QueryType.QUERY, query, params,
+				trace -> queryFirst(conn, query, params, this.<T>rowMapper(clazz), trace));
+	}
+	
+	/**
+	 * Executes update query.
+	 * 
+	 * @param query
+	 * @return
+	 * @throws SQLException
+	 */
+	public int executeUpdate(String query) throws SQLException {
+		return executeUpdate(query, EMPTY_LIST);
+	}
+
+	/**
+	 * Executes update query with the provided connection.
+	 * 
+	 * @param query
+	 * @return
+	 * @throws SQLException
+	 */
+	public int executeUpdate(Connection conn, String query) throws SQLException {
+		return executeUpdate(conn, query, EMPTY_LIST);
+	}
+	
+	/**
+	 * Executes update query.
+	 * 
+	 * @param query
+	 * @param params
+	 * @return
+	 * @throws SQLException
 	 */
 	public int executeUpdate(String query, List<Object> params) throws SQLException {
-		try (var conn = dataSource.getConnection();
-				var statement = prepareStatementWithParams(conn, query, params);) {
-			return statement.executeUpdate();
+		return traced(QueryType.UPDATE, query, params, trace -> {
+			try (var conn = acquire(trace)) {
+				return update(conn, query, params, trace);
+			}
+		});
+	}
+
+	/**
+	 * Executes update query with the provided connection.
+	 * 
+	 * @param query
+	 * @return
+	 * @throws SQLException
+	 */
+	public int executeUpdate(Connection conn, String query, List<Object> params) throws SQLException {
+		return traced(QueryType.UPDATE, query, params, trace -> update(conn, query, params, trace));
+	}
+
+	/**
+	 * Returns the number of rows sent to database per batch round trip.
+	 * 
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of rows sent to database per batch round trip. Defaults to
+	 * sqlemur.batch.size property or 1000.
+	 * 
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Executes update query once per params row, sending rows to database in
+	 * batches. All batches run in a single transaction.
+	 * 
+	 * @param query
+	 * @param paramsRows
+	 * @return update count of each params row
+	 * @throws SQLException
+	 */
+	public int[] executeBatch(String query, List<List<Object>> paramsRows) throws SQLException {
+		return executeBatch(query, paramsRows, batchSize);
+	}
+
+	/**
+	 * Executes update query once per params row, sending rows to database in
+	 * batches of the given size. All batches run in a single transaction.
+	 * 
+	 * @param query
+	 * @param paramsRows
+	 * @param batchSize
+	 * @return update count of each params row
+	 * @throws SQLException
+	 */
+	public int[] executeBatch(String query, List<List<Object>> paramsRows, int batchSize) throws SQLException {
+		var counts = new int[paramsRows.size()];
+		traced(QueryType.BATCH, query, EMPTY_LIST, trace -> {
+			try (var conn = acquire(trace)) {
+				runInTransaction(conn, c -> executeBatch(c, query, paramsRows, batchSize, counts, null, trace));
+			}
+			return null;
+		});
+		return counts;
+	}
+
+	/**
+	 * Executes update query with the provided connection once per params row,
+	 * sending rows to database in batches of the given size.
+	 * 
+	 * @param conn
+	 * @param query
+	 * @param paramsRows
+	 * @param batchSize
+	 * @return update count of each params row
+	 * @throws SQLException
+	 */
+	public int[] executeBatch(Connection conn, String query, List<List<Object>> paramsRows, int batchSize)
+			throws SQLException {
+		var counts = new int[paramsRows.size()];
+		traced(QueryType.BATCH, query, EMPTY_LIST, trace -> {
+			executeBatch(conn, query, paramsRows, batchSize, counts, null, trace);
+			return null;
+		});
+		return counts;
+	}
+
+	/**
+	 * Executes insert query once per params row, sending rows to database in
+	 * batches. All batches run in a single transaction.
+	 * 
+	 * @param query
+	 * @param paramsRows
+	 * @return keys generated by database, mapped to maps
+	 * @throws SQLException
+	 */
+	public ArrayList<Map<String, Object>> executeBatchReturningKeys(String query, List<List<Object>> paramsRows)
+			throws SQLException {
+		var keys = new ArrayList<Map<String, Object>>(paramsRows.size());
+		traced(QueryType.BATCH, query, EMPTY_LIST, trace -> {
+			try (var conn = acquire(trace)) {
+				runInTransaction(conn,
+						c -> executeBatch(c, query, paramsRows, batchSize, new int[paramsRows.size()], keys, trace));
+			}
+			return null;
+		});
+		return keys;
+	}
+
+	/**
+	 * Executes insert query with the provided connection once per params row,
+	 * sending rows to database in batches of the given size.
+	 * 
+	 * @param conn
+	 * @param query
+	 * @param paramsRows
+	 * @param batchSize
+	 * @return keys generated by database, mapped to maps
+	 * @throws SQLException
+	 */
+	public ArrayList<Map<String, Object>> executeBatchReturningKeys(Connection conn, String query,
+			List<List<Object>> paramsRows, int batchSize) throws SQLException {
+		var keys = new ArrayList<Map<String, Object>>(paramsRows.size());
+		traced(QueryType.BATCH, query, EMPTY_LIST, trace -> {
+			executeBatch(conn, query, paramsRows, batchSize, new int[paramsRows.size()], keys, trace);
+			return null;
+		});
+		return keys;
+	}
+
+	private void executeBatch(Connection conn, String query, List<List<Object>> paramsRows, int batchSize,
+			int[] counts, List<Map<String, Object>> keys, QueryTrace trace) throws SQLException {
+		executeBatch(conn, query, paramsRows, this::bindParams, batchSize, counts, keys, trace);
+	}
+
+	/**
+	 * Executes a batch of the given rows, each bound by binder.
+	 * 
+	 */
+	private <R> void executeBatch(Connection conn, String query, Collection<R> rows, BatchBinder<R> binder,
+			int batchSize, int[] counts, List<Map<String, Object>> keys, QueryTrace trace) throws SQLException {
+		var statement = keys != null ? statementCache.prepare(conn, query, Statement.RETURN_GENERATED_KEYS)
+				: statementCache.prepare(conn, query);
+		try {
+			var mapper = keys != null ? rowMapper() : null;
+			var pending = 0;
+			var offset = 0;
+			for (var row : rows) {
+				binder.bind(statement, row);
+				statement.addBatch();
+				if (++pending == batchSize || offset + pending == rows.size()) {
+					var batchCounts = statement.executeBatch();
+					trace.executed();
+					trace.updated(batchCounts.length);
+					System.arraycopy(batchCounts, 0, counts, offset, batchCounts.length);
+					offset += pending;
+					pending = 0;
+					if (keys != null) {
+						try (var rset = statement.getGeneratedKeys()) {
+							while (rset.next())
+								keys.add(mapper.map(rset));
+						}
+						trace.fetched();
+					}
+				}
+			}
+		} catch (SQLException e) {
+			// do not leave pending rows in a statement that is going to be reused
+			try {
+				statement.clearBatch();
+			} catch (SQLException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		} finally {
+			releaseStatement(conn, statement);
+			written(query);
 		}
 	}
 
+	@FunctionalInterface
+	private interface BatchBinder<R> {
+		public void bind(PreparedStatement statement, R row) throws SQLException;
+	}
+
 	/**
-	 * Executes update query with the provided connection.
+	 * Creates a buffer writing rows of the given insert (or update) in batches
+	 * behind the callers, with default options.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	public WriteBehindBuffer writeBehind(String query) {
+		return writeBehind(query, WriteBehindOptions.defaults());
+	}
+
+	/**
+	 * Creates a buffer writing rows of the given insert (or update) in batches
+	 * behind the callers, flushed by its own thread. It must be closed to flush
+	 * remaining rows and stop the thread.
 	 * 
 	 * @param query
+	 * @param options
 	 * @return
+	 */
+	public WriteBehindBuffer writeBehind(String query, WriteBehindOptions options) {
+		return new WriteBehindBuffer(this, query, options);
+	}
+
+	/**
+	 * Inserts objects of a class annotated with @Table into its table, sending rows
+	 * to database in batches. All batches run in a single transaction. Columns
+	 * which are null in every object are left out of the insert, so database can
+	 * fill them (ex generated keys). Objects whose every column is null can not be
+	 * inserted.
+	 * 
+	 * @param objects
+	 * @return update count of each object
 	 * @throws SQLException
 	 */
-	public int executeUpdate(Connection conn, String query, List<Object> params) throws SQLException {
-		try (var statement = prepareStatementWithParams(conn, query, params);) {
-			return statement.executeUpdate();
+	public int[] insertAll(Collection<?> objects) throws SQLException {
+		var counts = new int[objects.size()];
+		traced(QueryType.BATCH, null, EMPTY_LIST, trace -> {
+			try (var conn = acquire(trace)) {
+				runInTransaction(conn, c -> insertAll(c, objects, counts, null, trace));
+			}
+			return null;
+		});
+		return counts;
+	}
+
+	/**
+	 * Inserts objects of a class annotated with @Table into its table with the
+	 * provided connection, sending rows to database in batches.
+	 * 
+	 * @param conn
+	 * @param objects
+	 * @return update count of each object
+	 * @throws SQLException
+	 */
+	public int[] insertAll(Connection conn, Collection<?> objects) throws SQLException {
+		var counts = new int[objects.size()];
+		traced(QueryType.BATCH, null, EMPTY_LIST, trace -> {
+			insertAll(conn, objects, counts, null, trace);
+			return null;
+		});
+		return counts;
+	}
+
+	/**
+	 * Inserts objects of a class annotated with @Table into its table, sending rows
+	 * to database in batches. All batches run in a single transaction.
+	 * 
+	 * @param objects
+	 * @return keys generated by database, mapped to maps
+	 * @throws SQLException
+	 */
+	public ArrayList<Map<String, Object>> insertAllReturningKeys(Collection<?> objects) throws SQLException {
+		var keys = new ArrayList<Map<String, Object>>(objects.size());
+		traced(QueryType.BATCH, null, EMPTY_LIST, trace -> {
+			try (var conn = acquire(trace)) {
+				runInTransaction(conn, c -> insertAll(c, objects, new int[objects.size()], keys, trace));
+			}
+			return null;
+		});
+		return keys;
+	}
+
+	private void insertAll(Connection conn, Collection<?> objects, int[] counts, List<Map<String, Object>> keys,
+			QueryTrace trace) throws SQLException {
+		if (objects.isEmpty())
+			return;
+
+		var clazz = objects.iterator().next().getClass();
+		var mapper = classMapper(clazz);
+		for (var object : objects) {
+			if (object.getClass() != clazz)
+				throw new SQLException("Could not insert objects of different classes, expected " + clazz.getName()
+						+ " but found " + object.getClass().getName());
+		}
+		if (mapper.getGeneratedMapper() != null) {
+			insertAll(conn, mapper, mapper.getGeneratedMapper(), objects, counts, keys, trace);
+			return;
+		}
+
+		var columns = mapper.getColumns();
+		var used = new boolean[columns.size()];
+		var paramsRows = new ArrayList<List<Object>>(objects.size());
+		for (var object : objects) {
+			var values = mapper.getValues(object);
+			for (var i = 0; i < used.length; i++)
+				used[i] |= values.get(i) != null;
+			paramsRows.add(values);
+		}
+
+		var query = insertQuery(mapper, used);
+		if (!allUsed(used)) {
+			for (var row : paramsRows) {
+				var i = 0;
+				for (var it = row.iterator(); it.hasNext(); i++) {
+					it.next();
+					if (!used[i])
+						it.remove();
+				}
+			}
+		}
+		trace.rename(query);
+		executeBatch(conn, query, paramsRows, batchSize, counts, keys, trace);
+	}
+
+	/**
+	 * Returns the insert of the used columns. Columns null in every object are
+	 * left out, so database can fill them (ex generated keys).
+	 * 
+	 */
+	private static String insertQuery(ClassMapper<?> mapper, boolean[] used) throws SQLException {
+		var columns = mapper.getColumns();
+		var usedColumns = new ArrayList<String>();
+		for (var i = 0; i < used.length; i++) {
+			if (used[i])
+				usedColumns.add(columns.get(i));
+		}
+		if (usedColumns.isEmpty())
+			throw new SQLException("Could not insert objects of " + mapper.getMappedClass().getName()
+					+ ", every column is null in every object");
+		return usedColumns.size() < columns.size() ? mapper.getInsertQuery(usedColumns) : mapper.getInsertQuery();
+	}
+
+	private static boolean allUsed(boolean[] used) {
+		for (var columnUsed : used) {
+			if (!columnUsed)
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Inserts objects bound by their generated mapper, without collecting their
+	 * values.
+	 * 
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> void insertAll(Connection conn, ClassMapper<?> mapper, EntityMapper<T> generated,
+			Collection<?> objects, int[] counts, List<Map<String, Object>> keys, QueryTrace trace)
+			throws SQLException {
+		var columns = mapper.getColumns();
+		var used = new boolean[columns.size()];
+		for (var object : objects)
+			generated.markNonNull((T) object, used);
+
+		var query = insertQuery(mapper, used);
+		var boundColumns = allUsed(used) ? null : used;
+		trace.rename(query);
+		executeBatch(conn, query, (Collection<T>) objects,
+				(statement, object) -> generated.bind(statement, 1, object, boundColumns), batchSize, counts, keys,
+				trace);
+	}
+
+	/**
+	 * Returns the number of workers of partitioned queries and imports, a worker
+	 * per core, as rows are mapped by the thread reading them. Each worker holds a
+	 * pooled connection for its whole run, so a quarter of the pool (at least a
+	 * connection) is left to other callers.
+	 * 
+	 */
+	private int defaultParallelism() {
+		var parallelism = Runtime.getRuntime().availableProcessors();
+		var maxPoolSize = DatasourceFactory.getMaxPoolSize(dataSource());
+		if (maxPoolSize > 0)
+			parallelism = Math.min(parallelism, Math.max(1, maxPoolSize - Math.max(1, maxPoolSize / 4)));
+		return parallelism;
+	}
+
+	/**
+	 * Imports a CSV file with a header line into the given table, with default
+	 * {@link ImportOptions}.
+	 * 
+	 * @see #importFile(Path, String, Map, ImportOptions)
+	 * @param path
+	 * @param table
+	 * @param columnMapping
+	 * @return
+	 * @throws SQLException
+	 */
+	public ImportResult importFile(Path path, String table, Map<String, String> columnMapping) throws SQLException {
+		return importFile(path, table, columnMapping, ImportOptions.defaults());
+	}
+
+	/**
+	 * Imports a CSV file with a header line into the given table. Fields are
+	 * mapped to columns by the given mapping of header names to column names,
+	 * fields missing from mapping are skipped. If mapping is null or empty every
+	 * field is imported to the column named after it. Values are converted by the
+	 * type of their column; empty fields are imported as nulls, dates, times and
+	 * timestamps are expected in jdbc escape format and binaries in base64.
+	 * <p>
+	 * File is parsed and inserted in parallel, each worker inserting batches on
+	 * its own pooled connection and committing every commit interval rows.
+	 * Records which can not be converted and batches which fail are rejected and
+	 * reported to the progress listener of options, along with the progress of
+	 * import. Any other failure stops the import, keeping the rows committed so
+	 * far. Rows are committed outside of any transaction of the calling thread.
+	 * 
+	 * @param path
+	 * @param table
+	 * @param columnMapping
+	 * @param options
+	 * @return the number of rows inserted and rejected
+	 * @throws SQLException
+	 */
+	public ImportResult importFile(Path path, String table, Map<String, String> columnMapping,
+			ImportOptions options) throws SQLException {
+		var importBatchSize = options.getBatchSize() > 0 ? options.getBatchSize() : batchSize;
+		var commitInterval = options.getCommitInterval() > 0 ? options.getCommitInterval() : importBatchSize * 10;
+		var parallelism = options.getParallelism() > 0 ? options.getParallelism() : defaultParallelism();
+		var csvImport = new CsvImport(path, table, columnMapping, options, importBatchSize, commitInterval,
+				parallelism, this::getConnection);
+		return traced(QueryType.BATCH, null, EMPTY_LIST, trace -> {
+			try {
+				return csvImport.run(trace);
+			} finally {
+				// committed by workers, even if import failed
+				if (resultCache != null && csvImport.getInsertQuery() != null)
+					resultCache.invalidateWrittenBy(csvImport.getInsertQuery());
+			}
+		});
 	}
 
 	/**
@@ -349,31 +1787,51 @@ public class SQLemur {
 	 * @param procedureName
 	 * @throws SQLException
 	 */
-	public void executreProcedure(String procedureName) throws SQLException {
+	public void executeProcedure(String procedureName) throws SQLException {
 		this.executeProcedure(procedureName, EMPTY_LIST);
 	}
-	
+
 	/**
 	 * Executes procedure by name with the provided connection.
 	 * 
 	 * @param procedureName
 	 * @throws SQLException
 	 */
+	public void executeProcedure(Connection conn, String procedureName) throws SQLException {
+		this.executeProcedure(conn, procedureName, EMPTY_LIST);
+	}
+
+	/**
+	 * @deprecated use {@link #executeProcedure(String)}
+	 */
+	@Deprecated
+	public void executreProcedure(String procedureName) throws SQLException {
+		this.executeProcedure(procedureName, EMPTY_LIST);
+	}
+
+	/**
+	 * @deprecated use {@link #executeProcedure(Connection, String)}
+	 */
+	@Deprecated
 	public void executreProcedure(Connection conn, String procedureName) throws SQLException {
 		this.executeProcedure(conn, procedureName, EMPTY_LIST);
 	}
 
 	/**
-	 * Executes procedure by name with arguments.
+	 * Executes procedure by name with arguments. Result sets it returns are
+	 * skipped, see {@link #callProcedure(String, List, Class...)} to read them.
 	 * 
 	 * @param procedureName
 	 * @param params
 	 * @throws SQLException
 	 */
 	public void executeProcedure(String procedureName, List<Object> params) throws SQLException {
-		try(var conn = getConnection()) {
-			executeProcedure(conn, procedureName, params);
-		}
+		var callQuery = callQuery(procedureName, params.size());
+		traced(QueryType.PROCEDURE, callQuery, params, trace -> {
+			try (var conn = acquire(trace)) {
+				return call(conn, callQuery, params, null, trace);
+			}
+		});
 	}
 	
 	/**
@@ -384,13 +1842,183 @@ public class SQLemur {
 	 * @throws SQLException
 	 */
 	public void executeProcedure(Connection conn, String procedureName, List<Object> params) throws SQLException {
-		var callQuery = "call " + procedureName + "(";
-		for (var i = 0; i < params.size(); i++) {
-			callQuery += "?,";
+		var callQuery = callQuery(procedureName, params.size());
+		traced(QueryType.PROCEDURE, callQuery, params, trace -> call(conn, callQuery, params, null, trace));
+	}
+
+	/**
+	 * Calls procedure by name with arguments, in a single round trip returning
+	 * all of its results. Result sets are read in order, each mapped to the class
+	 * given at its index or to rows if there is none. Params of type
+	 * {@link OutParam} are registered as OUT or INOUT params and read after the
+	 * result sets.
+	 * 
+	 * @param procedureName
+	 * @param params
+	 * @param resultClasses classes of result sets, in order
+	 * @return
+	 * @throws SQLException
+	 */
+	public ProcedureResult callProcedure(String procedureName, List<Object> params, Class<?>... resultClasses)
+			throws SQLException {
+		var callQuery = callQuery(procedureName, params.size());
+		var mappers = resultMappers(resultClasses);
+		return traced(QueryType.PROCEDURE, callQuery, params, trace -> {
+			try (var conn = acquire(trace)) {
+				return call(conn, callQuery, params, mappers, trace);
+			}
+		});
+	}
+
+	/**
+	 * Calls procedure with the provided connection, see
+	 * {@link #callProcedure(String, List, Class...)}.
+	 * 
+	 * @param conn
+	 * @param procedureName
+	 * @param params
+	 * @param resultClasses classes of result sets, in order
+	 * @return
+	 * @throws SQLException
+	 */
+	public ProcedureResult callProcedure(Connection conn, String procedureName, List<Object> params,
+			Class<?>... resultClasses) throws SQLException {
+		var callQuery = callQuery(procedureName, params.size());
+		var mappers = resultMappers(resultClasses);
+		return traced(QueryType.PROCEDURE, callQuery, params, trace -> call(conn, callQuery, params, mappers, trace));
+	}
+
+	private RowMapper<?>[] resultMappers(Class<?>[] resultClasses) throws SQLException {
+		var mappers = new RowMapper<?>[resultClasses.length];
+		for (var i = 0; i < resultClasses.length; i++)
+			mappers[i] = resultClasses[i] != null ? rowMapper(resultClasses[i]) : rowMapper();
+		return mappers;
+	}
+
+	private static long updateCount(Statement statement) throws SQLException {
+		try {
+			return statement.getLargeUpdateCount();
+		} catch (SQLFeatureNotSupportedException | UnsupportedOperationException e) {
+			// drivers before JDBC 4.2 do not implement large counts
+			return statement.getUpdateCount();
+		}
+	}
+
+	/**
+	 * Runs a call, mapping its result sets by the given mappers (rows after the
+	 * last one) or skipping them if mappers are null.
+	 * 
+	 */
+	private ProcedureResult call(Connection conn, String callQuery, List<Object> params, RowMapper<?>[] mappers,
+			QueryTrace trace) throws SQLException {
+		var statement = statementCache.prepareCall(conn, callQuery);
+		try {
+			var outParams = bindCallParams(statement, params);
+			var hasResultSet = statement.execute();
+			trace.executed();
+
+			var resultSets = new ArrayList<List<?>>();
+			var updateCounts = new ArrayList<Long>();
+			var updated = 0L;
+			while (true) {
+				if (hasResultSet) {
+					try (var rset = statement.getResultSet()) {
+						if (mappers != null) {
+							var mapper = resultSets.size() < mappers.length ? mappers[resultSets.size()] : rowMapper();
+							var rows = new ArrayList<Object>();
+							while (rset.next()) {
+								trace.fetched();
+								rows.add(mapper.map(rset));
+								trace.mapped();
+							}
+							trace.fetched();
+							resultSets.add(Collections.unmodifiableList(rows));
+						}
+					}
+				} else {
+					var count = updateCount(statement);
+					if (count == -1)
+						break;
+					updateCounts.add(count);
+					updated += count;
+				}
+				hasResultSet = statement.getMoreResults();
+			}
+			trace.updated(updated);
+
+			if (mappers == null)
+				return null;
+			Object[] outs = null;
+			if (outParams != null) {
+				outs = new Object[outParams.length];
+				for (var i = 0; i < outParams.length; i++) {
+					if (outParams[i])
+						outs[i] = statement.getObject(i + 1);
+				}
+			}
+			return new ProcedureResult(Collections.unmodifiableList(resultSets),
+					Collections.unmodifiableList(updateCounts), outs, outParams != null ? outParams : new boolean[0]);
+		} finally {
+			releaseStatement(conn, statement);
+			written(callQuery);
+		}
+	}
+
+	/**
+	 * Binds params of a call, registering {@link OutParam}s.
+	 * 
+	 * @return positions of OUT params, or null if there are none
+	 */
+	private boolean[] bindCallParams(CallableStatement statement, List<Object> params) throws SQLException {
+		boolean[] outParams = null;
+		var i = 0;
+		for (var param : params) {
+			if (param instanceof OutParam) {
+				if (outParams == null)
+					outParams = new boolean[params.size()];
+				outParams[i] = true;
+			}
+			i++;
+		}
+		if (outParams == null) {
+			bindParams(statement, params);
+			return null;
+		}
+
+		i = 0;
+		for (var param : params) {
+			if (param instanceof OutParam out) {
+				if (out.isIn())
+					ParamBinders.bind(statement, i + 1, out.getValue(), emptyStringAsNull);
+				statement.registerOutParameter(i + 1, out.getSqlType());
+			} else {
+				ParamBinders.bind(statement, i + 1, param, emptyStringAsNull);
+			}
+			i++;
 		}
-		callQuery = callQuery.substring(0, callQuery.length() - 1) + ")";
+		return outParams;
+	}
 
-		this.executeUpdate(conn, callQuery, params);
+	/**
+	 * Returns the jdbc escape call of the given procedure and number of params,
+	 * ex {call name(?,?)}, built once per procedure and number of params.
+	 * 
+	 */
+	private String callQuery(String procedureName, int params) {
+		var calls = callQueries.get(procedureName);
+		if (calls != null && params < calls.length && calls[params] != null)
+			return calls[params];
+		return callQueries.compute(procedureName, (name, current) -> {
+			var grown = current == null ? new String[params + 1]
+					: Arrays.copyOf(current, Math.max(current.length, params + 1));
+			if (grown[params] == null) {
+				var call = new StringBuilder("{call ").append(name).append('(');
+				for (var i = 0; i < params; i++)
+					call.append(i == 0 ? "?" : ",?");
+				grown[params] = call.append(")}").toString();
+			}
+			return grown;
+		})[params];
 	}
 
 	public void rollbackQuitely(Connection conn) {
@@ -402,22 +2030,188 @@ public class SQLemur {
 	}
 
 	protected Connection getConnection() throws SQLException {
-		return dataSource.getConnection();
+		return dataSource().getConnection();
 	}
 
 	public void transaction(SqlTransaction transaction) throws SQLException {
-		try (var conn = dataSource.getConnection()) {
-			try {
-				conn.setAutoCommit(false);
-				transaction.run(conn);
-				conn.commit();
-			} catch (Throwable t) {
-				rollbackQuitely(conn);
-				throw t;
+		traced(QueryType.TRANSACTION, null, EMPTY_LIST, trace -> {
+			// nested transactions already hold a slot of the limiter
+			var limiter = transactionWrites.get() == null ? concurrencyLimiter : null;
+			if (limiter != null)
+				acquire(limiter);
+			var outcome = ConcurrencyLimiter.Outcome.FAILED;
+			try (var conn = acquire(trace)) {
+				runInTransaction(conn, transaction);
+				trace.executed();
+				outcome = ConcurrencyLimiter.Outcome.COMMITTED;
+			} catch (SQLException e) {
+				if (RetryPolicy.isContention(e))
+					outcome = ConcurrencyLimiter.Outcome.ABORTED;
+				throw e;
 			} finally {
-				conn.setAutoCommit(true);
+				if (limiter != null)
+					limiter.release(outcome);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Runs transaction, running it again while it is rolled back because of
+	 * contention (ex deadlocks, serialization failures), as long as the given
+	 * policy allows. Every attempt runs on a new connection, after a random
+	 * backoff, so transaction must have no side effects outside of database.
+	 * 
+	 * @param transaction
+	 * @param retryPolicy
+	 * @throws SQLException the failure of the last attempt
+	 */
+	public void transaction(SqlTransaction transaction, RetryPolicy retryPolicy) throws SQLException {
+		for (var attempt = 1;; attempt++) {
+			try {
+				transaction(transaction);
+				return;
+			} catch (SQLException e) {
+				// inner transactions are rolled back along with their outer one, which retries them
+				if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(e)
+						|| transactionWrites.get() != null)
+					throw e;
+				var backoff = retryPolicy.backoff(attempt);
+				LOGGER.log(Level.DEBUG, "Retrying transaction in " + backoff.toMillis() + "ms after attempt "
+						+ attempt + " failed: " + e.getMessage());
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					e.addSuppressed(ie);
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void acquire(ConcurrencyLimiter limiter) throws SQLException {
+		try {
+			limiter.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting to start transaction", e);
+		}
+	}
+
+	/**
+	 * Returns the limiter of concurrent transactions, null if transactions are
+	 * not limited. It is created when sqlemur.transaction.maxconcurrency property
+	 * is set, starting from that limit.
+	 * 
+	 * @return
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Limits the transactions running at the same time, or stops limiting them
+	 * if limiter is null.
+	 * 
+	 * @param concurrencyLimiter
+	 */
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	private void runInTransaction(Connection conn, SqlTransaction transaction) throws SQLException {
+		var outerWrites = transactionWrites.get();
+		var writes = new LinkedHashSet<String>();
+		transactionWrites.set(writes);
+		try {
+			conn.setAutoCommit(false);
+			transaction.run(conn);
+			conn.commit();
+		} catch (Throwable t) {
+			rollbackQuitely(conn);
+			throw t;
+		} finally {
+			transactionWrites.set(outerWrites);
+			// invalidated on rollback too, writes may have run on other connections
+			for (var query : writes)
+				written(query);
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Returns the executor of async methods. It is created on first use and runs
+	 * at most sqlemur.pool.maxsize tasks at the same time, on virtual threads.
+	 * Tasks waiting for a slot are bounded by sqlemur.async.maxqueue (default
+	 * 1000), further tasks fail fast.
+	 * 
+	 * @return
+	 */
+	public AsyncExecutor getAsyncExecutor() {
+		var executor = asyncExecutor;
+		if (executor == null) {
+			synchronized (this) {
+				executor = asyncExecutor;
+				if (executor == null) {
+					executor = new AsyncExecutor(SQLemurProperties.get(SQLemurConfig.POOL_MAX_SIZE),
+							SQLemurProperties.get(SQLemurConfig.ASYNC_MAX_QUEUE));
+					asyncExecutor = executor;
+				}
 			}
 		}
+		return executor;
+	}
+
+	/**
+	 * Runs the given database work asynchronously on a virtual thread.
+	 * 
+	 * @param <T>
+	 * @param task
+	 * @return
+	 */
+	public <T> CompletableFuture<T> async(SqlCallable<T> task) {
+		return getAsyncExecutor().submit(task);
+	}
+
+	/**
+	 * Executes query asynchronously. It tries to map rows to map.
+	 * 
+	 */
+	public CompletableFuture<ArrayList<Map<String, Object>>> executeQueryAsync(String query, List<Object> params) {
+		return async(() -> executeQueryToList(query, params));
+	}
+
+	/**
+	 * Executes query asynchronously. It tries to map rows to the given class.
+	 * 
+	 */
+	public <T> CompletableFuture<List<T>> executeQueryAsync(String query, List<Object> params, Class<?> clazz) {
+		return async(() -> executeQueryToList(query, params, clazz));
+	}
+
+	/**
+	 * Executes update query asynchronously.
+	 * 
+	 * @param query
+	 * @param params
+	 * @return
+	 */
+	public CompletableFuture<Integer> executeUpdateAsync(String query, List<Object> params) {
+		return async(() -> executeUpdate(query, params));
+	}
+
+	/**
+	 * Runs transaction asynchronously.
+	 * 
+	 * @param transaction
+	 * @return
+	 */
+	public CompletableFuture<Void> transactionAsync(SqlTransaction transaction) {
+		return async(() -> {
+			transaction(transaction);
+			return null;
+		});
 	}
 
 	public String getUrl() {
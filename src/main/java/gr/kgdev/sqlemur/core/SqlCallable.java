@@ -0,0 +1,8 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface SqlCallable<T> {
+	public T call() throws SQLException;
+}
@@ -0,0 +1,233 @@
+package gr.kgdev.sqlemur.core;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.dbcp2.DelegatingConnection;
+
+/**
+ * Client side cache of prepared statements, bounded by LRU per connection.
+ * Statements are keyed by query and result set options. Statements taken from
+ * the cache must be given back with {@link #release(Connection, PreparedStatement)}
+ * instead of being closed.
+ * 
+ * Statements are prepared on the physical connection (when the pool gives
+ * access to it), so they survive returning the connection to the pool and are
+ * reused by the next borrower of the same physical connection.
+ */
+public class StatementCache {
+
+	private final int maxSize;
+	private final ConcurrentHashMap<Connection, ConnectionStatements> connections = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * @param maxSize max statements cached per connection, 0 disables caching
+	 */
+	public StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	public PreparedStatement prepare(Connection conn, String query) throws SQLException {
+		return prepare(conn, new Key(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY,
+				Statement.NO_GENERATED_KEYS, false));
+	}
+
+	/**
+	 * Takes a callable statement of the given call, to be given back by
+	 * {@link #release(Connection, PreparedStatement)}.
+	 * 
+	 * @param conn
+	 * @param call
+	 * @return
+	 * @throws SQLException
+	 */
+	public CallableStatement prepareCall(Connection conn, String call) throws SQLException {
+		return (CallableStatement) prepare(conn, new Key(call, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY, Statement.NO_GENERATED_KEYS, true));
+	}
+
+	public PreparedStatement prepare(Connection conn, String query, int autoGeneratedKeys) throws SQLException {
+		return prepare(conn,
+				new Key(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, autoGeneratedKeys, false));
+	}
+
+	public PreparedStatement prepare(Connection conn, String query, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return prepare(conn, new Key(query, resultSetType, resultSetConcurrency, Statement.NO_GENERATED_KEYS, false));
+	}
+
+	private PreparedStatement prepare(Connection conn, Key key) throws SQLException {
+		if (!isEnabled())
+			return key.prepare(conn);
+
+		var physical = physical(conn);
+		var statements = connections.get(physical);
+		if (statements == null) {
+			purgeClosed();
+			statements = new ConnectionStatements();
+			connections.put(physical, statements);
+		}
+		return statements.take(physical, key);
+	}
+
+	/**
+	 * Gives back a statement taken from {@link #prepare(Connection, String)}.
+	 * Statement is cached for the next call, or closed if it is not cacheable.
+	 * 
+	 * @param conn
+	 * @param statement
+	 * @throws SQLException
+	 */
+	public void release(Connection conn, PreparedStatement statement) throws SQLException {
+		var statements = isEnabled() ? connections.get(physical(conn)) : null;
+		if (statements == null || !statements.give(statement))
+			statement.close();
+	}
+
+	/**
+	 * Closes all cached statements.
+	 */
+	public void clear() {
+		for (var connection : connections.keySet()) {
+			var statements = connections.remove(connection);
+			if (statements != null)
+				statements.clear();
+		}
+	}
+
+	public Stats getStats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum(), size.get(), connections.size());
+	}
+
+	private static Connection physical(Connection conn) {
+		if (conn instanceof DelegatingConnection<?> delegating) {
+			var innermost = delegating.getInnermostDelegate();
+			if (innermost != null)
+				return innermost;
+		}
+		return conn;
+	}
+
+	// statements of connections closed by the pool are closed by the driver,
+	// so their entries are dropped whenever a new connection shows up
+	private void purgeClosed() {
+		for (var entry : connections.entrySet()) {
+			try {
+				if (!entry.getKey().isClosed())
+					continue;
+			} catch (SQLException e) {
+				// treat connection as closed
+			}
+			if (connections.remove(entry.getKey(), entry.getValue()))
+				entry.getValue().clear();
+		}
+	}
+
+	/**
+	 * Snapshot of cache metrics.
+	 */
+	public record Stats(long hits, long misses, long evictions, int size, int connections) {
+
+		public double hitRate() {
+			var total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+	}
+
+	private record Key(String query, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys,
+			boolean callable) {
+
+		private PreparedStatement prepare(Connection conn) throws SQLException {
+			if (callable)
+				return conn.prepareCall(query);
+			if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS)
+				return conn.prepareStatement(query, autoGeneratedKeys);
+			if (resultSetType != ResultSet.TYPE_FORWARD_ONLY || resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+				return conn.prepareStatement(query, resultSetType, resultSetConcurrency);
+			return conn.prepareStatement(query);
+		}
+	}
+
+	/**
+	 * Statements of a single connection. A connection is used by one thread at a
+	 * time, locking only guards against purging from other threads.
+	 */
+	private class ConnectionStatements {
+
+		// idle statements, in access order
+		private final LinkedHashMap<Key, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+		private final IdentityHashMap<PreparedStatement, Key> taken = new IdentityHashMap<>();
+
+		private synchronized PreparedStatement take(Connection conn, Key key) throws SQLException {
+			var statement = idle.remove(key);
+			if (statement != null && !statement.isClosed()) {
+				size.decrementAndGet();
+				hits.increment();
+			} else {
+				if (statement != null)
+					size.decrementAndGet();
+				// statement with the same key may be in use (ex nested query in a row action)
+				statement = key.prepare(conn);
+				misses.increment();
+			}
+			taken.put(statement, key);
+			return statement;
+		}
+
+		private synchronized boolean give(PreparedStatement statement) throws SQLException {
+			var key = taken.remove(statement);
+			if (key == null || idle.containsKey(key) || statement.isClosed())
+				return false;
+
+			try {
+				statement.clearParameters();
+			} catch (SQLException e) {
+				return false;
+			}
+			idle.put(key, statement);
+			size.incrementAndGet();
+			if (idle.size() > maxSize) {
+				var eldest = idle.entrySet().iterator();
+				var evicted = eldest.next().getValue();
+				eldest.remove();
+				size.decrementAndGet();
+				evictions.increment();
+				evicted.close();
+			}
+			return true;
+		}
+
+		private synchronized void clear() {
+			for (var statement : idle.values()) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			size.addAndGet(-idle.size());
+			idle.clear();
+		}
+	}
+}
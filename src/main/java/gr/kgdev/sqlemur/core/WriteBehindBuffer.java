@@ -0,0 +1,283 @@
+package gr.kgdev.sqlemur.core;
+
+import java.lang.System.Logger.Level;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Buffers rows of an insert (or any update) and writes them behind the
+ * callers, in batches. Appending does not lock, rows go to a lock free queue
+ * which a single thread flushes whenever flush rows are buffered or flush
+ * interval passes, each flush a single transaction of jdbc batches. When the
+ * buffer is full appending waits for space (backpressure), up to max wait.
+ *
+ * Every append returns a future completed when the flush writing the row
+ * commits, or failed if it does not. Dependent actions of futures run on the
+ * flushing thread unless added by async methods. Closing flushes buffered rows
+ * and stops the flushing thread.
+ */
+public final class WriteBehindBuffer implements AutoCloseable {
+
+	private static final System.Logger LOGGER = System.getLogger(WriteBehindBuffer.class.getName());
+
+	private final SQLemur sqlemur;
+	private final String query;
+	private final int flushRows;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final Duration maxWait;
+	private final RetryPolicy retryPolicy;
+	private final Consumer<WriteBehindFlush> listener;
+	private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+	private final Semaphore space;
+	private final AtomicInteger pending = new AtomicInteger();
+	// appends between their closed check and their enqueue, waited by the final flush
+	private final AtomicInteger appending = new AtomicInteger();
+	private final AtomicInteger flushRequests = new AtomicInteger();
+	private final AtomicLong flushed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final Thread flusher;
+	private final Thread exitHook;
+	private volatile boolean closed = false;
+
+	WriteBehindBuffer(SQLemur sqlemur, String query, WriteBehindOptions options) {
+		this.sqlemur = sqlemur;
+		this.query = query;
+		this.flushRows = options.getFlushRows() > 0 ? options.getFlushRows() : sqlemur.getBatchSize();
+		this.batchSize = Math.min(flushRows, sqlemur.getBatchSize());
+		this.flushIntervalNanos = options.getFlushInterval().toNanos();
+		this.maxWait = options.getMaxWait();
+		this.retryPolicy = options.getRetryPolicy();
+		this.listener = options.getListener();
+		this.space = new Semaphore(options.getCapacity() > 0 ? options.getCapacity() : flushRows * 10);
+		this.flusher = Thread.ofPlatform().daemon().name("sqlemur-write-behind").start(this::run);
+		if (options.isFlushOnExit()) {
+			exitHook = new Thread(this::close, "sqlemur-write-behind-exit");
+			Runtime.getRuntime().addShutdownHook(exitHook);
+		} else {
+			exitHook = null;
+		}
+	}
+
+	/**
+	 * Appends a row of params, waiting for space if the buffer is full. If there
+	 * is no space after max wait, or the buffer is closed, returned future is
+	 * already failed.
+	 *
+	 * @param params
+	 * @return
+	 */
+	public CompletableFuture<Void> append(List<Object> params) {
+		appending.incrementAndGet();
+		try {
+			if (closed)
+				return CompletableFuture.failedFuture(new IllegalStateException("Write behind buffer is closed"));
+			if (!space.tryAcquire() && !awaitSpace()) {
+				rejected.incrementAndGet();
+				return CompletableFuture.failedFuture(new SQLTransientException(
+						"Write behind buffer is full, no space after " + maxWait.toMillis() + "ms"));
+			}
+			var ack = new CompletableFuture<Void>();
+			queue.offer(new Entry(params, ack));
+			if (pending.incrementAndGet() == flushRows)
+				LockSupport.unpark(flusher);
+			return ack;
+		} finally {
+			appending.decrementAndGet();
+		}
+	}
+
+	private boolean awaitSpace() {
+		try {
+			return !maxWait.isZero() && space.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Flushes all rows appended so far without waiting for flush rows or flush
+	 * interval. Returned future is completed once they are flushed, failed if the
+	 * flush of any of them failed.
+	 *
+	 * @return
+	 */
+	public CompletableFuture<Void> flush() {
+		appending.incrementAndGet();
+		try {
+			if (closed)
+				return CompletableFuture.failedFuture(new IllegalStateException("Write behind buffer is closed"));
+			var marker = new Entry(null, new CompletableFuture<>());
+			queue.offer(marker);
+			flushRequests.incrementAndGet();
+			LockSupport.unpark(flusher);
+			return marker.ack;
+		} finally {
+			appending.decrementAndGet();
+		}
+	}
+
+	private void run() {
+		var batch = new ArrayList<Entry>(flushRows);
+		Exception failure = null;
+		while (true) {
+			var deadline = System.nanoTime() + flushIntervalNanos;
+			// woken by appends reaching flush rows, flush and close
+			for (var remaining = flushIntervalNanos; remaining > 0 && pending.get() < flushRows && !closed
+					&& flushRequests.get() == 0; remaining = deadline - System.nanoTime())
+				LockSupport.parkNanos(this, remaining);
+
+			for (Entry entry; batch.size() < flushRows && (entry = queue.poll()) != null;) {
+				if (entry.params != null) {
+					batch.add(entry);
+					continue;
+				}
+				// flush marker, rows before it are flushed first
+				failure = flush(batch, failure);
+				complete(entry.ack, failure);
+				failure = null;
+				flushRequests.decrementAndGet();
+			}
+			failure = flush(batch, failure);
+
+			if (closed && appending.get() == 0 && queue.isEmpty())
+				return;
+		}
+	}
+
+	/**
+	 * Writes the given rows in a transaction and acknowledges them, returning the
+	 * error of the flush, or the previous one, to be reported to the next flush
+	 * marker.
+	 */
+	private Exception flush(List<Entry> batch, Exception previousFailure) {
+		if (batch.isEmpty())
+			return previousFailure;
+		var rows = new ArrayList<List<Object>>(batch.size());
+		for (var entry : batch)
+			rows.add(entry.params);
+		var start = System.nanoTime();
+		Exception error = null;
+		try {
+			sqlemur.transaction(conn -> sqlemur.executeBatch(conn, query, rows, batchSize), retryPolicy);
+		} catch (SQLException | RuntimeException e) {
+			error = e;
+			LOGGER.log(Level.WARNING, "Write behind flush of " + batch.size() + " rows failed", e);
+		}
+		var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		var count = batch.size();
+		if (error == null)
+			flushed.addAndGet(count);
+		else
+			failed.addAndGet(count);
+		space.release(count);
+		var remaining = pending.addAndGet(-count);
+		for (var entry : batch)
+			complete(entry.ack, error);
+		batch.clear();
+
+		if (listener != null) {
+			try {
+				listener.accept(new WriteBehindFlush(count, elapsed, error, flushed.get(), failed.get(), remaining));
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Write behind flush listener failed", e);
+			}
+		}
+		return error != null ? error : previousFailure;
+	}
+
+	private static void complete(CompletableFuture<Void> ack, Exception error) {
+		if (error == null)
+			ack.complete(null);
+		else
+			ack.completeExceptionally(error);
+	}
+
+	/**
+	 * Stops accepting rows, flushes buffered ones and waits for the flushing
+	 * thread to stop.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(flusher);
+		var interrupted = false;
+		while (flusher.isAlive() && Thread.currentThread() != flusher) {
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (exitHook != null && Thread.currentThread() != exitHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(exitHook);
+			} catch (IllegalStateException e) {
+				// jvm is exiting, hook is running or about to
+			}
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns the number of rows buffered, not yet flushed.
+	 *
+	 * @return
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * Returns the number of rows committed.
+	 *
+	 * @return
+	 */
+	public long getFlushed() {
+		return flushed.get();
+	}
+
+	/**
+	 * Returns the number of rows of failed flushes.
+	 *
+	 * @return
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the number of rows rejected because the buffer was full.
+	 *
+	 * @return
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	private record Entry(List<Object> params, CompletableFuture<Void> ack) {
+	}
+}
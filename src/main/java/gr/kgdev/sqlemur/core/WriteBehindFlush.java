@@ -0,0 +1,22 @@
+package gr.kgdev.sqlemur.core;
+
+import java.time.Duration;
+
+/**
+ * A flush of a write behind buffer, along with the totals of the buffer when
+ * it completed. Rows of a failed flush are not written.
+ *
+ * @param rows         rows of flush
+ * @param elapsed      time of the transaction writing them, retries included
+ * @param error        the error flush failed with, or null if it committed
+ * @param totalFlushed rows committed by all flushes so far
+ * @param totalFailed  rows of all failed flushes so far
+ * @param pending      rows buffered after the flush
+ */
+public record WriteBehindFlush(int rows, Duration elapsed, Exception error, long totalFlushed, long totalFailed,
+		int pending) {
+
+	public boolean isCommitted() {
+		return error == null;
+	}
+}
@@ -0,0 +1,173 @@
+package gr.kgdev.sqlemur.core;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Options of {@link SQLemur#writeBehind(String, WriteBehindOptions)}. Every
+ * option returns a copy, ex
+ * {@code WriteBehindOptions.defaults().flushRows(500).flushInterval(Duration.ofMillis(50))}.
+ */
+public class WriteBehindOptions {
+
+	private static final WriteBehindOptions DEFAULTS = new WriteBehindOptions(0, Duration.ofMillis(100), 0,
+			Duration.ofSeconds(10), RetryPolicy.defaults(), true, null);
+
+	private final int flushRows;
+	private final Duration flushInterval;
+	private final int capacity;
+	private final Duration maxWait;
+	private final RetryPolicy retryPolicy;
+	private final boolean flushOnExit;
+	private final Consumer<WriteBehindFlush> listener;
+
+	private WriteBehindOptions(int flushRows, Duration flushInterval, int capacity, Duration maxWait,
+			RetryPolicy retryPolicy, boolean flushOnExit, Consumer<WriteBehindFlush> listener) {
+		this.flushRows = flushRows;
+		this.flushInterval = flushInterval;
+		this.capacity = capacity;
+		this.maxWait = maxWait;
+		this.retryPolicy = retryPolicy;
+		this.flushOnExit = flushOnExit;
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns options flushing every sqlemur.batch.size rows or 100ms, buffering
+	 * up to 10 flushes of rows, waiting up to 10s for space when full, retrying
+	 * contended flushes by the default retry policy and flushing on jvm exit.
+	 *
+	 * @return
+	 */
+	public static WriteBehindOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Returns a copy flushing as soon as the given number of rows is buffered, at
+	 * most that many rows per flush.
+	 *
+	 * @param flushRows
+	 * @return
+	 */
+	public WriteBehindOptions flushRows(int flushRows) {
+		if (flushRows < 1)
+			throw new IllegalArgumentException("Flush rows must be positive");
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy flushing buffered rows at least once per the given interval.
+	 *
+	 * @param flushInterval
+	 * @return
+	 */
+	public WriteBehindOptions flushInterval(Duration flushInterval) {
+		if (flushInterval.isNegative() || flushInterval.isZero())
+			throw new IllegalArgumentException("Flush interval must be positive");
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy buffering up to the given number of rows, appending more
+	 * waits until rows are flushed.
+	 *
+	 * @param capacity
+	 * @return
+	 */
+	public WriteBehindOptions capacity(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy waiting up to the given time for space when the buffer is
+	 * full, then rejecting the row. Zero rejects right away.
+	 *
+	 * @param maxWait
+	 * @return
+	 */
+	public WriteBehindOptions maxWait(Duration maxWait) {
+		if (maxWait.isNegative())
+			throw new IllegalArgumentException("Max wait must not be negative");
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy retrying flushes by the given policy.
+	 *
+	 * @param retryPolicy
+	 * @return
+	 */
+	public WriteBehindOptions retryPolicy(RetryPolicy retryPolicy) {
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy flushing, or not, buffered rows when the jvm exits without
+	 * the buffer being closed.
+	 *
+	 * @param flushOnExit
+	 * @return
+	 */
+	public WriteBehindOptions flushOnExit(boolean flushOnExit) {
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns a copy reporting every flush to the given listener, called on the
+	 * flushing thread.
+	 *
+	 * @param listener
+	 * @return
+	 */
+	public WriteBehindOptions onFlush(Consumer<WriteBehindFlush> listener) {
+		return new WriteBehindOptions(flushRows, flushInterval, capacity, maxWait, retryPolicy, flushOnExit,
+				listener);
+	}
+
+	/**
+	 * Returns rows per flush, 0 for the default.
+	 *
+	 * @return
+	 */
+	public int getFlushRows() {
+		return flushRows;
+	}
+
+	public Duration getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Returns max rows buffered, 0 for the default.
+	 *
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Duration getMaxWait() {
+		return maxWait;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public boolean isFlushOnExit() {
+		return flushOnExit;
+	}
+
+	public Consumer<WriteBehindFlush> getListener() {
+		return listener;
+	}
+}
@@ -0,0 +1,21 @@
+package gr.kgdev.sqlemur.export;
+
+/**
+ * Formats of {@link ResultSetExporter}, both encoded in UTF-8 with a line per
+ * row.
+ */
+public enum ExportFormat {
+
+	/**
+	 * Comma separated values with a header line of column names. Fields
+	 * containing commas, quotes or line breaks are quoted as in RFC 4180, nulls
+	 * are written as empty fields and empty strings as {@code ""}.
+	 */
+	CSV,
+
+	/**
+	 * A JSON object per line, keyed by column names. Numeric and boolean columns
+	 * are written as JSON numbers and booleans, binary columns as base64 strings.
+	 */
+	JSONL
+}
@@ -0,0 +1,433 @@
+package gr.kgdev.sqlemur.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.HashSet;
+
+import gr.kgdev.sqlemur.orm.ORMUtils;
+
+/**
+ * Writes the rows of a result set as CSV or JSON Lines, encoding every value
+ * straight into a buffer which is written out whenever it fills up. Integer,
+ * floating point and boolean columns are read with primitive getters and
+ * written without creating strings, so memory stays constant however many
+ * rows are exported. An exporter is not thread safe, its buffer is reused by
+ * every export.
+ */
+public class ResultSetExporter {
+
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LONG_MIN = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+	private final ExportFormat format;
+	private final boolean camelCase;
+	private final byte[] buffer;
+	private final ByteBuffer byteBuffer;
+	// floating point values are formatted here, StringBuilder appends them without creating strings
+	private final StringBuilder digits = new StringBuilder(32);
+	private int position;
+	private OutputStream out;
+	private WritableByteChannel channel;
+
+	/**
+	 * @param format
+	 * @param camelCase  whether column names are converted to camel case
+	 * @param bufferSize bytes buffered before writing to output, at least 64
+	 */
+	public ResultSetExporter(ExportFormat format, boolean camelCase, int bufferSize) {
+		this.format = format;
+		this.camelCase = camelCase;
+		this.buffer = new byte[Math.max(bufferSize, 64)];
+		this.byteBuffer = ByteBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Writes all remaining rows of result set to the given stream, which is
+	 * flushed but not closed.
+	 *
+	 * @param rset
+	 * @param out
+	 * @return the number of rows written
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long export(ResultSet rset, OutputStream out) throws SQLException, IOException {
+		this.out = out;
+		try {
+			var rows = export(rset);
+			out.flush();
+			return rows;
+		} finally {
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Writes all remaining rows of result set to the given channel, which is not
+	 * closed.
+	 *
+	 * @param rset
+	 * @param channel
+	 * @return the number of rows written
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long export(ResultSet rset, WritableByteChannel channel) throws SQLException, IOException {
+		this.channel = channel;
+		try {
+			return export(rset);
+		} finally {
+			this.channel = null;
+		}
+	}
+
+	private long export(ResultSet rset) throws SQLException, IOException {
+		position = 0;
+		var rsmd = rset.getMetaData();
+		var count = rsmd.getColumnCount();
+		var kinds = new Kind[count];
+		var names = new String[count];
+		var used = new HashSet<String>();
+		for (var i = 1; i <= count; i++) {
+			var label = rsmd.getColumnLabel(i);
+			var name = camelCase ? ORMUtils.toCamelCase(label) : label;
+			// same naming as map mode and ColumnFrame, so keys of a line are unique
+			if (!used.add(name))
+				name = camelCase ? name + " (" + rsmd.getTableName(i) + ")" : rsmd.getTableName(i) + "." + name;
+			names[i - 1] = name;
+			kinds[i - 1] = kind(rsmd, i);
+		}
+
+		// json keys and separators are encoded once, ex {"id": and ,"name":
+		byte[][] keys = null;
+		if (format == ExportFormat.JSONL) {
+			keys = new byte[count][];
+			for (var i = 0; i < count; i++) {
+				var key = new StringBuilder(names[i].length() + 4).append(i == 0 ? '{' : ',');
+				appendJsonString(key, names[i]);
+				keys[i] = key.append(':').toString().getBytes(StandardCharsets.UTF_8);
+			}
+		} else {
+			for (var i = 0; i < count; i++) {
+				if (i > 0)
+					write((byte) ',');
+				writeCsv(names[i]);
+			}
+			write((byte) '\n');
+		}
+
+		var rows = 0L;
+		while (rset.next()) {
+			for (var i = 0; i < count; i++) {
+				if (keys != null)
+					write(keys[i]);
+				else if (i > 0)
+					write((byte) ',');
+				writeValue(rset, i + 1, kinds[i]);
+			}
+			if (keys != null && count == 0)
+				write((byte) '{');
+			if (keys != null)
+				write((byte) '}');
+			write((byte) '\n');
+			rows++;
+		}
+		flush();
+		return rows;
+	}
+
+	private void writeValue(ResultSet rset, int index, Kind kind) throws SQLException, IOException {
+		var json = format == ExportFormat.JSONL;
+		switch (kind) {
+		case LONG:
+			var longValue = rset.getLong(index);
+			if (rset.wasNull())
+				writeNull(json);
+			else
+				writeLong(longValue);
+			break;
+		case DOUBLE:
+		case FLOAT:
+			var doubleValue = kind == Kind.FLOAT ? rset.getFloat(index) : rset.getDouble(index);
+			// json has no NaN and infinities
+			if (rset.wasNull() || json && (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue))) {
+				writeNull(json);
+			} else {
+				digits.setLength(0);
+				if (kind == Kind.FLOAT)
+					digits.append((float) doubleValue);
+				else
+					digits.append(doubleValue);
+				writeAscii(digits);
+			}
+			break;
+		case BOOLEAN:
+			var booleanValue = rset.getBoolean(index);
+			if (rset.wasNull())
+				writeNull(json);
+			else
+				write(booleanValue ? TRUE : FALSE);
+			break;
+		case DECIMAL:
+			var decimalValue = rset.getBigDecimal(index);
+			if (decimalValue == null)
+				writeNull(json);
+			else
+				writeAscii(decimalValue.toPlainString());
+			break;
+		case BINARY:
+			var bytesValue = rset.getBytes(index);
+			if (bytesValue == null) {
+				writeNull(json);
+				break;
+			}
+			if (json)
+				write((byte) '"');
+			write(Base64.getEncoder().encode(bytesValue));
+			if (json)
+				write((byte) '"');
+			break;
+		default:
+			var textValue = rset.getString(index);
+			if (textValue == null)
+				writeNull(json);
+			else if (json)
+				writeJson(textValue);
+			else
+				writeCsv(textValue);
+		}
+	}
+
+	private void writeNull(boolean json) throws IOException {
+		if (json)
+			write(NULL);
+	}
+
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			write(LONG_MIN);
+			return;
+		}
+		ensure(20);
+		if (value < 0) {
+			buffer[position++] = '-';
+			value = -value;
+		}
+		var end = position + digitCount(value);
+		for (var i = end - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position = end;
+	}
+
+	private static int digitCount(long value) {
+		var count = 1;
+		while (value >= 10) {
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	private void writeCsv(String value) throws IOException {
+		// empty strings are quoted, an empty unquoted field is null
+		var quoted = value.isEmpty();
+		for (var i = 0; i < value.length() && !quoted; i++) {
+			var c = value.charAt(i);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quoted) {
+			writeUtf8(value);
+			return;
+		}
+		write((byte) '"');
+		for (var i = 0; i < value.length(); i++) {
+			var c = value.charAt(i);
+			if (c == '"')
+				write((byte) '"');
+			i = writeChar(value, i);
+		}
+		write((byte) '"');
+	}
+
+	private void writeJson(String value) throws IOException {
+		write((byte) '"');
+		for (var i = 0; i < value.length(); i++) {
+			var c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				ensure(2);
+				buffer[position++] = '\\';
+				buffer[position++] = (byte) c;
+			} else if (c < 0x20) {
+				writeControl(c);
+			} else {
+				i = writeChar(value, i);
+			}
+		}
+		write((byte) '"');
+	}
+
+	private void writeControl(char c) throws IOException {
+		ensure(6);
+		buffer[position++] = '\\';
+		switch (c) {
+		case '\n':
+			buffer[position++] = 'n';
+			break;
+		case '\r':
+			buffer[position++] = 'r';
+			break;
+		case '\t':
+			buffer[position++] = 't';
+			break;
+		case '\b':
+			buffer[position++] = 'b';
+			break;
+		case '\f':
+			buffer[position++] = 'f';
+			break;
+		default:
+			buffer[position++] = 'u';
+			buffer[position++] = '0';
+			buffer[position++] = '0';
+			buffer[position++] = HEX[c >> 4];
+			buffer[position++] = HEX[c & 0xf];
+		}
+	}
+
+	private static void appendJsonString(StringBuilder builder, String value) {
+		builder.append('"');
+		for (var i = 0; i < value.length(); i++) {
+			var c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		builder.append('"');
+	}
+
+	private void writeUtf8(String value) throws IOException {
+		for (var i = 0; i < value.length(); i++)
+			i = writeChar(value, i);
+	}
+
+	/**
+	 * Encodes the char at index in UTF-8, along with the next one if they form a
+	 * surrogate pair. Returns the index of the last char encoded.
+	 */
+	private int writeChar(String value, int index) throws IOException {
+		ensure(4);
+		int c = value.charAt(index);
+		if (c < 0x80) {
+			buffer[position++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[position++] = (byte) (0xc0 | c >> 6);
+			buffer[position++] = (byte) (0x80 | c & 0x3f);
+		} else if (Character.isHighSurrogate((char) c) && index + 1 < value.length()
+				&& Character.isLowSurrogate(value.charAt(index + 1))) {
+			var codePoint = Character.toCodePoint((char) c, value.charAt(++index));
+			buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+			buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+			buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+			buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+		} else if (Character.isSurrogate((char) c)) {
+			// unpaired surrogate, replaced as String.getBytes does
+			buffer[position++] = '?';
+		} else {
+			buffer[position++] = (byte) (0xe0 | c >> 12);
+			buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+			buffer[position++] = (byte) (0x80 | c & 0x3f);
+		}
+		return index;
+	}
+
+	private void writeAscii(CharSequence value) throws IOException {
+		for (var i = 0; i < value.length(); i++)
+			write((byte) value.charAt(i));
+	}
+
+	private void write(byte b) throws IOException {
+		ensure(1);
+		buffer[position++] = b;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		var offset = 0;
+		while (offset < bytes.length) {
+			if (position == buffer.length)
+				flush();
+			var length = Math.min(bytes.length - offset, buffer.length - position);
+			System.arraycopy(bytes, offset, buffer, position, length);
+			position += length;
+			offset += length;
+		}
+	}
+
+	// at most 20 bytes are ensured, buffer is at least 64
+	private void ensure(int bytes) throws IOException {
+		if (buffer.length - position < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		if (position == 0)
+			return;
+		if (out != null) {
+			out.write(buffer, 0, position);
+		} else {
+			byteBuffer.clear().limit(position);
+			while (byteBuffer.hasRemaining())
+				channel.write(byteBuffer);
+		}
+		position = 0;
+	}
+
+	private static Kind kind(ResultSetMetaData rsmd, int column) throws SQLException {
+		switch (rsmd.getColumnType(column)) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+			return Kind.LONG;
+		case Types.REAL:
+			return Kind.FLOAT;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return Kind.DOUBLE;
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return Kind.BOOLEAN;
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			// integral decimals fitting a long are written without a BigDecimal
+			var precision = rsmd.getPrecision(column);
+			return rsmd.getScale(column) == 0 && precision > 0 && precision <= 18 ? Kind.LONG : Kind.DECIMAL;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return Kind.BINARY;
+		default:
+			return Kind.TEXT;
+		}
+	}
+
+	private enum Kind {
+		LONG, DOUBLE, FLOAT, BOOLEAN, DECIMAL, BINARY, TEXT
+	}
+}
@@ -0,0 +1,45 @@
+package gr.kgdev.sqlemur.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("gr.kgdev.sqlemur.Query")
+@Label("SQLemur Query")
+@Category({ "SQLemur" })
+@Description("Execution of a query, update, batch, procedure or transaction")
+@StackTrace(false)
+class JfrQueryEvent extends Event {
+
+	@Label("Type")
+	String type;
+
+	@Label("SQL")
+	String sql;
+
+	@Label("Connection Acquire Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long acquireTime;
+
+	@Label("Execute Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long executeTime;
+
+	@Label("Fetch Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long fetchTime;
+
+	@Label("Map Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long mapTime;
+
+	@Label("Rows")
+	long rows;
+
+	@Label("Error")
+	String error;
+}
@@ -0,0 +1,24 @@
+package gr.kgdev.sqlemur.metrics;
+
+/**
+ * Listener emitting a gr.kgdev.sqlemur.Query JFR event per execution. Events
+ * cost nothing unless a recording with the event enabled is running.
+ */
+public class JfrQueryListener implements QueryListener {
+
+	@Override
+	public void onQuery(QueryEvent event) {
+		var jfrEvent = new JfrQueryEvent();
+		if (!jfrEvent.isEnabled())
+			return;
+		jfrEvent.type = event.type().name();
+		jfrEvent.sql = event.sql();
+		jfrEvent.acquireTime = event.acquireNanos();
+		jfrEvent.executeTime = event.executeNanos();
+		jfrEvent.fetchTime = event.fetchNanos();
+		jfrEvent.mapTime = event.mapNanos();
+		jfrEvent.rows = event.rows();
+		jfrEvent.error = event.error() != null ? event.error().toString() : null;
+		jfrEvent.commit();
+	}
+}
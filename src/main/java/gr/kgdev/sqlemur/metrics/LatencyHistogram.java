@@ -0,0 +1,101 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log linear histogram of durations in nanoseconds. Each power of
+ * two range is split in 16 buckets, so recorded values keep about 6% precision
+ * up to about 4.8 hours. Recording is a single atomic increment.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	private static final long MAX_VALUE = (1L << 44) - 1;
+	private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		var value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		if (value > max.get())
+			max.accumulateAndGet(value, Math::max);
+	}
+
+	private static int indexOf(long value) {
+		if (value < LINEAR_LIMIT)
+			return (int) value;
+		var exponent = 63 - Long.numberOfLeadingZeros(value);
+		var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// middle of the bucket range
+	private static long valueOf(int index) {
+		if (index < LINEAR_LIMIT)
+			return index;
+		var exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		var subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+		var width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (SUB_BUCKETS + subBucket) * width + width / 2;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public void reset() {
+		for (var i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Returns a consistent enough view of the recorded values. Values recorded
+	 * while taking the snapshot may be partially included.
+	 * 
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		var copy = new long[BUCKETS];
+		var total = 0L;
+		for (var i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		var maxValue = max.get();
+		return new Snapshot(total, total == 0 ? 0 : sum.sum() / Math.max(1, count.sum()),
+				percentile(copy, total, 0.50, maxValue), percentile(copy, total, 0.90, maxValue),
+				percentile(copy, total, 0.99, maxValue), percentile(copy, total, 0.999, maxValue), maxValue);
+	}
+
+	private static long percentile(long[] counts, long total, double percentile, long max) {
+		if (total == 0)
+			return 0;
+		var rank = (long) Math.ceil(percentile * total);
+		var seen = 0L;
+		for (var i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(valueOf(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * Recorded values summary, in nanoseconds.
+	 */
+	public record Snapshot(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+	}
+}
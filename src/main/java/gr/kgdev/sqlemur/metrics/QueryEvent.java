@@ -0,0 +1,33 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.util.List;
+
+/**
+ * A finished execution of a query, update, batch, procedure or transaction.
+ * Times are in nanoseconds: acquire is the time waiting for a pooled
+ * connection (0 when caller provided the connection), execute the time until
+ * the statement returned, fetch the time spent moving the cursor and map the
+ * time spent mapping rows. For transactions execute is the time spent running
+ * and committing the transaction.
+ * 
+ * @param type
+ * @param sql    query as given by the caller, null for transactions
+ * @param params bound params, do not modify them
+ * @param acquireNanos
+ * @param executeNanos
+ * @param fetchNanos
+ * @param mapNanos
+ * @param rows   rows read by queries, or rows updated by updates and batches
+ * @param error  the error the execution failed with, or null
+ */
+public record QueryEvent(QueryType type, String sql, List<Object> params, long acquireNanos, long executeNanos,
+		long fetchNanos, long mapNanos, long rows, Throwable error) {
+
+	public long totalNanos() {
+		return acquireNanos + executeNanos + fetchNanos + mapNanos;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+}
@@ -0,0 +1,12 @@
+package gr.kgdev.sqlemur.metrics;
+
+/**
+ * Gets notified after every execution of a SQLemur instance it is registered
+ * to. It is called on the executing thread, so it must be fast and thread
+ * safe. Exceptions thrown by listeners are logged and ignored.
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+	public void onQuery(QueryEvent event);
+}
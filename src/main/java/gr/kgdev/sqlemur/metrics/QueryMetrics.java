@@ -0,0 +1,125 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener aggregating executions per normalized query into lock free latency
+ * histograms of connection acquire, execute (including fetch) and mapping
+ * time, along with counts of executions, errors and rows.
+ * 
+ * Distinct queries tracked are bounded, executions of queries above the bound
+ * are aggregated under {@link #OTHER}. Executions without sql (ex inserts of
+ * objects and imports failing before their insert is known) are aggregated per
+ * type, as {@code <batch>} for batches.
+ */
+public class QueryMetrics implements QueryListener {
+
+	public static final String OTHER = "<other>";
+	public static final String TRANSACTION = "<transaction>";
+
+	private final int maxStatements;
+	private final ConcurrentHashMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+	public QueryMetrics() {
+		this(500);
+	}
+
+	/**
+	 * @param maxStatements max number of distinct normalized queries tracked
+	 */
+	public QueryMetrics(int maxStatements) {
+		this.maxStatements = maxStatements;
+	}
+
+	@Override
+	public void onQuery(QueryEvent event) {
+		var key = key(event);
+		var stats = statistics.get(key);
+		if (stats == null) {
+			if (statistics.size() >= maxStatements)
+				key = OTHER;
+			stats = statistics.computeIfAbsent(key, k -> new Statistics(event.type()));
+		}
+		stats.record(event);
+	}
+
+	private static String key(QueryEvent event) {
+		if (event.type() == QueryType.TRANSACTION)
+			return TRANSACTION;
+		if (event.sql() == null)
+			return "<" + event.type().name().toLowerCase(Locale.ROOT) + ">";
+		return SqlNormalizer.normalize(event.sql());
+	}
+
+	/**
+	 * Returns statistics of all tracked queries, slowest in total first.
+	 * 
+	 * @return
+	 */
+	public List<QueryStats> snapshot() {
+		var snapshot = new ArrayList<QueryStats>(statistics.size());
+		statistics.forEach((sql, stats) -> snapshot.add(stats.snapshot(sql)));
+		snapshot.sort(Comparator.comparingLong(QueryStats::totalNanos).reversed());
+		return snapshot;
+	}
+
+	/**
+	 * Returns statistics of the given query, or null if it is not tracked.
+	 * 
+	 * @param sql
+	 * @return
+	 */
+	public QueryStats snapshot(String sql) {
+		if (sql == null)
+			return null;
+		var key = SqlNormalizer.normalize(sql);
+		var stats = statistics.get(key);
+		return stats != null ? stats.snapshot(key) : null;
+	}
+
+	public void reset() {
+		statistics.clear();
+	}
+
+	/**
+	 * Statistics of a normalized query. Times are in nanoseconds.
+	 */
+	public record QueryStats(String sql, QueryType type, long count, long errors, long rows, long totalNanos,
+			LatencyHistogram.Snapshot acquire, LatencyHistogram.Snapshot execute, LatencyHistogram.Snapshot map) {
+	}
+
+	private static class Statistics {
+
+		private final QueryType type;
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LatencyHistogram acquire = new LatencyHistogram();
+		private final LatencyHistogram execute = new LatencyHistogram();
+		private final LatencyHistogram map = new LatencyHistogram();
+
+		private Statistics(QueryType type) {
+			this.type = type;
+		}
+
+		private void record(QueryEvent event) {
+			acquire.record(event.acquireNanos());
+			execute.record(event.executeNanos() + event.fetchNanos());
+			map.record(event.mapNanos());
+			rows.add(event.rows());
+			totalNanos.add(event.totalNanos());
+			if (event.isFailed())
+				errors.increment();
+		}
+
+		private QueryStats snapshot(String sql) {
+			return new QueryStats(sql, type, execute.getCount(), errors.sum(), rows.sum(), totalNanos.sum(),
+					acquire.snapshot(), execute.snapshot(), map.snapshot());
+		}
+	}
+}
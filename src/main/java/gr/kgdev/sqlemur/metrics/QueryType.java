@@ -0,0 +1,5 @@
+package gr.kgdev.sqlemur.metrics;
+
+public enum QueryType {
+	QUERY, UPDATE, BATCH, PROCEDURE, TRANSACTION
+}
@@ -0,0 +1,336 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.lang.System.Logger.Level;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Listener logging executions slower than a threshold, as a single warning
+ * with the sql, the params (after redaction), the time split into connection
+ * acquire, execute, fetch and map, and the rows. Thresholds can be set per sql
+ * pattern, the first pattern found in the sql wins. Failed executions are
+ * logged too when slow.
+ *
+ * When explain is enabled and the log is registered with
+ * {@link gr.kgdev.sqlemur.core.SQLemur#addSlowQueryLog(SlowQueryLog)}, the
+ * plan of slow queries is captured by running the explain statement of the
+ * database on another pooled connection, off the executing thread. Explains
+ * run one at a time and at most once per interval for the same normalized
+ * query, then the warning is logged along with the plan.
+ */
+public class SlowQueryLog implements QueryListener {
+
+	private static final System.Logger LOGGER = System.getLogger(SlowQueryLog.class.getName());
+	private static final int MAX_EXPLAINED = 1000;
+
+	/** replaces redacted params in the log */
+	public static final String REDACTED = "<redacted>";
+
+	private final long thresholdNanos;
+	private final List<PatternThreshold> patternThresholds;
+	private final List<ParamRedactor> redactors;
+	private final int maxParamLength;
+	private final String explainPrefix;
+	private final Duration explainInterval;
+	private final ConnectionSource connections;
+	private final long minThresholdNanos;
+	private final ConcurrentHashMap<String, Long> explained = new ConcurrentHashMap<>();
+	private final AtomicBoolean explaining = new AtomicBoolean();
+
+	private SlowQueryLog(long thresholdNanos, List<PatternThreshold> patternThresholds,
+			List<ParamRedactor> redactors, int maxParamLength, String explainPrefix, Duration explainInterval,
+			ConnectionSource connections) {
+		this.thresholdNanos = thresholdNanos;
+		this.patternThresholds = Collections.unmodifiableList(patternThresholds);
+		this.redactors = Collections.unmodifiableList(redactors);
+		this.maxParamLength = maxParamLength;
+		this.explainPrefix = explainPrefix;
+		this.explainInterval = explainInterval;
+		this.connections = connections;
+		var min = thresholdNanos;
+		for (var patternThreshold : patternThresholds)
+			min = Math.min(min, patternThreshold.nanos);
+		this.minThresholdNanos = min;
+	}
+
+	/**
+	 * Creates a log of executions slower than the given threshold, logging
+	 * params as they are, strings truncated to 200 characters, without plans.
+	 *
+	 * @param threshold
+	 * @return
+	 */
+	public static SlowQueryLog of(Duration threshold) {
+		return new SlowQueryLog(threshold.toNanos(), List.of(), List.of(), 200, null, Duration.ofSeconds(10), null);
+	}
+
+	/**
+	 * Returns a copy logging queries matching the given regular expression when
+	 * slower than the given threshold instead.
+	 *
+	 * @param regex     found in the sql, case insensitive
+	 * @param threshold
+	 * @return
+	 */
+	public SlowQueryLog threshold(String regex, Duration threshold) {
+		var patternThresholds = new ArrayList<>(this.patternThresholds);
+		patternThresholds.add(new PatternThreshold(Pattern.compile(regex, Pattern.CASE_INSENSITIVE),
+				threshold.toNanos()));
+		return new SlowQueryLog(thresholdNanos, patternThresholds, redactors, maxParamLength, explainPrefix,
+				explainInterval, connections);
+	}
+
+	/**
+	 * Returns a copy passing logged params through the given redactor, after the
+	 * ones already added.
+	 *
+	 * @param redactor
+	 * @return
+	 */
+	public SlowQueryLog redact(ParamRedactor redactor) {
+		var redactors = new ArrayList<>(this.redactors);
+		redactors.add(redactor);
+		return new SlowQueryLog(thresholdNanos, patternThresholds, redactors, maxParamLength, explainPrefix,
+				explainInterval, connections);
+	}
+
+	/**
+	 * Returns a copy redacting params compared to, assigned to or inserted into
+	 * the given columns, ex {@code password = ?}.
+	 *
+	 * @param columns case insensitive, without qualifier
+	 * @return
+	 */
+	public SlowQueryLog redactColumns(String... columns) {
+		var names = new HashSet<String>();
+		for (var column : columns)
+			names.add(column.trim().toLowerCase(Locale.ROOT));
+		var redacted = Set.copyOf(names);
+		return redact((sql, index, column, value) -> column != null && redacted.contains(column) ? REDACTED : value);
+	}
+
+	/**
+	 * Returns a copy logging every param as {@link #REDACTED}.
+	 *
+	 * @return
+	 */
+	public SlowQueryLog redactParams() {
+		return redact((sql, index, column, value) -> REDACTED);
+	}
+
+	/**
+	 * Returns a copy truncating logged string params to the given length.
+	 *
+	 * @param maxParamLength
+	 * @return
+	 */
+	public SlowQueryLog maxParamLength(int maxParamLength) {
+		return new SlowQueryLog(thresholdNanos, patternThresholds, redactors, maxParamLength, explainPrefix,
+				explainInterval, connections);
+	}
+
+	/**
+	 * Returns a copy capturing the plan of slow queries, running the query with
+	 * the given prefix and the original params, at most once per interval for
+	 * the same normalized query. The prefix depends on the database, ex
+	 * "explain " (postgresql, mysql, h2) or "explain query plan " (sqlite). Only
+	 * queries are explained, never updates, since prefixes like "explain
+	 * analyze " run the statement.
+	 *
+	 * @param prefix
+	 * @param interval
+	 * @return
+	 */
+	public SlowQueryLog explain(String prefix, Duration interval) {
+		return new SlowQueryLog(thresholdNanos, patternThresholds, redactors, maxParamLength, prefix, interval,
+				connections);
+	}
+
+	/**
+	 * Returns a copy explaining queries on connections of the given source.
+	 *
+	 * @param connections
+	 * @return
+	 */
+	public SlowQueryLog connections(ConnectionSource connections) {
+		return new SlowQueryLog(thresholdNanos, patternThresholds, redactors, maxParamLength, explainPrefix,
+				explainInterval, connections);
+	}
+
+	/**
+	 * Returns the threshold of the given sql.
+	 *
+	 * @param sql
+	 * @return
+	 */
+	public Duration getThreshold(String sql) {
+		return Duration.ofNanos(thresholdNanos(sql));
+	}
+
+	private long thresholdNanos(String sql) {
+		if (sql != null) {
+			for (var patternThreshold : patternThresholds) {
+				if (patternThreshold.pattern.matcher(sql).find())
+					return patternThreshold.nanos;
+			}
+		}
+		return thresholdNanos;
+	}
+
+	@Override
+	public void onQuery(QueryEvent event) {
+		var total = event.totalNanos();
+		// most executions are fast, patterns are matched only for the slow ones
+		if (total < minThresholdNanos || event.type() == QueryType.TRANSACTION)
+			return;
+		var threshold = thresholdNanos(event.sql());
+		if (total < threshold)
+			return;
+		var message = message(event, threshold);
+		if (shouldExplain(event)) {
+			// params are bound as given, they are never logged unredacted
+			var params = new ArrayList<Object>(event.params());
+			Thread.ofVirtual().name("sqlemur-explain").start(() -> {
+				try {
+					LOGGER.log(Level.WARNING, message + "\n" + explain(event.sql(), params));
+				} finally {
+					explaining.set(false);
+				}
+			});
+		} else {
+			LOGGER.log(Level.WARNING, message);
+		}
+	}
+
+	private String message(QueryEvent event, long threshold) {
+		var message = new StringBuilder(256);
+		message.append("Slow ").append(event.type().name().toLowerCase(Locale.ROOT)).append(" took ")
+				.append(millis(event.totalNanos())).append(" (threshold ").append(millis(threshold)).append("): ")
+				.append(event.sql());
+		if (!event.params().isEmpty()) {
+			message.append("\n  params: [");
+			var columns = SqlParameters.columns(event.sql());
+			var index = 0;
+			for (var param : event.params()) {
+				if (index > 0)
+					message.append(", ");
+				var column = index < columns.size() ? columns.get(index) : null;
+				appendParam(message, redacted(event.sql(), index, column, param));
+				index++;
+			}
+			message.append(']');
+		}
+		message.append("\n  acquire ").append(millis(event.acquireNanos())).append(", execute ")
+				.append(millis(event.executeNanos())).append(", fetch ").append(millis(event.fetchNanos()))
+				.append(", map ").append(millis(event.mapNanos())).append(", rows ").append(event.rows());
+		if (event.isFailed())
+			message.append("\n  failed: ").append(event.error());
+		return message.toString();
+	}
+
+	private Object redacted(String sql, int index, String column, Object value) {
+		for (var redactor : redactors)
+			value = redactor.redact(sql, index, column, value);
+		return value;
+	}
+
+	private void appendParam(StringBuilder message, Object param) {
+		if (param == REDACTED) {
+			message.append(REDACTED);
+		} else if (param instanceof byte[] bytes) {
+			message.append('<').append(bytes.length).append(" bytes>");
+		} else if (param instanceof CharSequence string) {
+			message.append('\'');
+			if (string.length() > maxParamLength)
+				message.append(string, 0, maxParamLength).append("...");
+			else
+				message.append(string);
+			message.append('\'');
+		} else {
+			message.append(param);
+		}
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0);
+	}
+
+	private boolean shouldExplain(QueryEvent event) {
+		if (explainPrefix == null || connections == null || event.type() != QueryType.QUERY || event.isFailed())
+			return false;
+		var key = SqlNormalizer.normalize(event.sql());
+		var now = System.nanoTime();
+		var last = explained.get(key);
+		if (last != null && now - last < explainInterval.toNanos())
+			return false;
+		if (!explaining.compareAndSet(false, true))
+			return false;
+		if (explained.size() >= MAX_EXPLAINED)
+			explained.clear();
+		explained.put(key, now);
+		return true;
+	}
+
+	private String explain(String sql, List<Object> params) {
+		try (var conn = connections.getConnection();
+				var statement = conn.prepareStatement(explainPrefix + sql)) {
+			statement.setQueryTimeout((int) Math.max(1, explainInterval.toSeconds()));
+			var i = 1;
+			for (var param : params)
+				statement.setObject(i++, param);
+			try (var rset = statement.executeQuery()) {
+				var plan = new StringBuilder("  plan:");
+				var columnCount = rset.getMetaData().getColumnCount();
+				while (rset.next()) {
+					plan.append("\n    ");
+					for (var column = 1; column <= columnCount; column++) {
+						if (column > 1)
+							plan.append(" | ");
+						var value = rset.getString(column);
+						plan.append(value != null ? value.replace("\n", "\n    ") : null);
+					}
+				}
+				return plan.toString();
+			}
+		} catch (SQLException | RuntimeException e) {
+			return "  plan not captured: " + e;
+		}
+	}
+
+	private record PatternThreshold(Pattern pattern, long nanos) {
+	}
+
+	/**
+	 * Replaces a param before it is logged.
+	 */
+	@FunctionalInterface
+	public interface ParamRedactor {
+
+		/**
+		 * @param sql
+		 * @param index  of the param, starting from 0
+		 * @param column the param is bound to, lower case, or null if not known
+		 * @param value  as given or as replaced by previous redactors
+		 * @return the value to log, ex {@link SlowQueryLog#REDACTED}
+		 */
+		public Object redact(String sql, int index, String column, Object value);
+	}
+
+	/**
+	 * Source of the connections explains run on.
+	 */
+	@FunctionalInterface
+	public interface ConnectionSource {
+		public Connection getConnection() throws SQLException;
+	}
+}
@@ -0,0 +1,87 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalizes queries, so queries differing only in literals are grouped
+ * together. String and numeric literals are replaced by ?, lists of params
+ * (ex in clauses) are collapsed to a single param and whitespace is collapsed.
+ */
+public class SqlNormalizer {
+
+	private static final int MAX_CACHED = 10_000;
+	private static final ConcurrentHashMap<String, String> CACHE = new ConcurrentHashMap<>();
+
+	public static String normalize(String sql) {
+		if (sql == null)
+			return null;
+		var normalized = CACHE.get(sql);
+		if (normalized == null) {
+			normalized = doNormalize(sql);
+			if (CACHE.size() >= MAX_CACHED)
+				CACHE.clear();
+			CACHE.put(sql, normalized);
+		}
+		return normalized;
+	}
+
+	private static String doNormalize(String sql) {
+		var out = new StringBuilder(sql.length());
+		var length = sql.length();
+		for (var i = 0; i < length; i++) {
+			var c = sql.charAt(i);
+			if (c == '\'') {
+				// string literal, '' is an escaped quote
+				for (i++; i < length; i++) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'')
+							i++;
+						else
+							break;
+					}
+				}
+				appendParam(out);
+			} else if (Character.isDigit(c) && !isIdentifierPart(out)) {
+				while (i + 1 < length && (Character.isLetterOrDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.'))
+					i++;
+				appendParam(out);
+			} else if (Character.isWhitespace(c)) {
+				if (out.length() > 0 && out.charAt(out.length() - 1) != ' ')
+					out.append(' ');
+			} else if (c == '?') {
+				appendParam(out);
+			} else {
+				out.append(c);
+			}
+		}
+		var end = out.length();
+		while (end > 0 && out.charAt(end - 1) == ' ')
+			end--;
+		out.setLength(end);
+		return out.toString();
+	}
+
+	private static boolean isIdentifierPart(StringBuilder out) {
+		if (out.length() == 0)
+			return false;
+		var last = out.charAt(out.length() - 1);
+		return Character.isLetterOrDigit(last) || last == '_' || last == '.' || last == '"';
+	}
+
+	// a param following "?, " or "?," is collapsed into the previous one
+	private static void appendParam(StringBuilder out) {
+		var end = out.length();
+		while (end > 0 && out.charAt(end - 1) == ' ')
+			end--;
+		if (end > 0 && out.charAt(end - 1) == ',') {
+			var previous = end - 1;
+			while (previous > 0 && out.charAt(previous - 1) == ' ')
+				previous--;
+			if (previous > 0 && out.charAt(previous - 1) == '?') {
+				out.setLength(previous);
+				return;
+			}
+		}
+		out.append('?');
+	}
+}
@@ -0,0 +1,139 @@
+package gr.kgdev.sqlemur.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the column each param of a query is bound to, so params can be
+ * redacted by column. Params compared to a column ({@code col = ?},
+ * {@code col in (?, ?)}, {@code col between ? and ?}), assigned to a column
+ * ({@code set col = ?}) or inserted into a column
+ * ({@code insert into t (a, b) values (?, ?)}) are recognized, the column of
+ * any other param is null.
+ */
+class SqlParameters {
+
+	private static final int MAX_CACHED = 10_000;
+	private static final ConcurrentHashMap<String, List<String>> CACHE = new ConcurrentHashMap<>();
+	// words of a comparison, the column compared is kept, ex col between ? and ?
+	private static final Set<String> OPERATORS = Set.of("and", "or", "not", "between", "like", "ilike", "in",
+			"is", "null", "escape", "any", "all", "some");
+	// words starting a clause, params following them are not bound to a column unless one follows
+	private static final Set<String> CLAUSES = Set.of("select", "from", "where", "having", "on", "set", "when",
+			"then", "else", "case", "end", "values", "limit", "offset", "fetch", "first", "next", "rows", "row",
+			"only", "top");
+
+	/**
+	 * Returns the column of every param of the given query, in order, lower case
+	 * and without qualifier, or null for params not bound to a column.
+	 *
+	 * @param sql
+	 * @return
+	 */
+	static List<String> columns(String sql) {
+		var columns = CACHE.get(sql);
+		if (columns == null) {
+			columns = parse(sql);
+			if (CACHE.size() >= MAX_CACHED)
+				CACHE.clear();
+			CACHE.put(sql, columns);
+		}
+		return columns;
+	}
+
+	private static List<String> parse(String sql) {
+		var columns = new ArrayList<String>();
+		var length = sql.length();
+		String column = null;
+		String previousWord = null;
+		List<String> insertColumns = null;
+		var collectingInsert = false;
+		var inValues = false;
+		var depth = 0;
+		var position = 0;
+		for (var i = 0; i < length; i++) {
+			var c = sql.charAt(i);
+			if (c == '\'') {
+				// string literal, '' is an escaped quote
+				for (i++; i < length; i++) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'')
+							i++;
+						else
+							break;
+					}
+				}
+				column = null;
+			} else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+				while (i < length && sql.charAt(i) != '\n')
+					i++;
+			} else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+				var end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 1;
+			} else if (c == '"' || c == '`' || Character.isJavaIdentifierStart(c)) {
+				var start = i;
+				String word;
+				if (c == '"' || c == '`') {
+					var end = sql.indexOf(c, i + 1);
+					i = end < 0 ? length - 1 : end;
+					word = sql.substring(start + 1, i).toLowerCase();
+				} else {
+					while (i + 1 < length && (Character.isJavaIdentifierPart(sql.charAt(i + 1))
+							|| sql.charAt(i + 1) == '.'))
+						i++;
+					word = sql.substring(start, i + 1).toLowerCase();
+					if (OPERATORS.contains(word))
+						continue;
+					if (CLAUSES.contains(word)) {
+						if (word.equals("values") && insertColumns != null) {
+							inValues = true;
+							depth = 0;
+						}
+						column = null;
+						previousWord = word;
+						continue;
+					}
+				}
+				word = word.substring(word.lastIndexOf('.') + 1);
+				if (collectingInsert) {
+					insertColumns.add(word);
+				} else if (!followedBy(sql, i + 1, '(')) {
+					// functions do not replace the column, ex col = lower(?)
+					column = word;
+				}
+				if ("into".equals(previousWord) && followedBy(sql, i + 1, '(')) {
+					insertColumns = new ArrayList<>();
+					collectingInsert = true;
+					i = sql.indexOf('(', i + 1);
+				}
+				previousWord = word;
+			} else if (c == ')' && collectingInsert) {
+				collectingInsert = false;
+			} else if (inValues && c == '(') {
+				if (depth++ == 0)
+					position = 0;
+			} else if (inValues && c == ')') {
+				depth--;
+			} else if (inValues && c == ',' && depth == 1) {
+				position++;
+			} else if (c == '?') {
+				if (inValues && depth > 0)
+					columns.add(position < insertColumns.size() ? insertColumns.get(position) : null);
+				else
+					columns.add(column);
+			}
+		}
+		return Collections.unmodifiableList(columns);
+	}
+
+	private static boolean followedBy(String sql, int from, char c) {
+		for (var i = from; i < sql.length(); i++) {
+			if (!Character.isWhitespace(sql.charAt(i)))
+				return sql.charAt(i) == c;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,280 @@
+package gr.kgdev.sqlemur.orm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.dbcp2.DelegatingResultSet;
+
+/**
+ * Precompiled mapper of a class annotated with @Table.
+ * Annotations, fields and the no-args constructor are resolved once per class
+ * into method handles, so mapping a row does not use reflection. Classes with
+ * an {@link EntityMapper} generated at compile time are mapped by it instead.
+ * 
+ * @param <T>
+ */
+public class ClassMapper<T> {
+
+	private static final ConcurrentHashMap<Class<?>, ClassMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private final Class<?> clazz;
+	private final MethodHandle constructor;
+	private final ColumnField[] fields;
+	private final String tableName;
+	private final List<String> columns;
+	private final String insertQuery;
+	private final EntityMapper<T> generated;
+
+	private ClassMapper(EntityMapper<T> generated) {
+		this.clazz = generated.getMappedClass();
+		this.constructor = null;
+		this.fields = null;
+		this.tableName = generated.getTableName();
+		this.columns = generated.getColumns();
+		this.insertQuery = getInsertQuery(columns);
+		this.generated = generated;
+	}
+
+	private ClassMapper(Class<?> clazz) throws ReflectiveOperationException {
+		var lookup = MethodHandles.lookup();
+		var cons = clazz.getDeclaredConstructor();
+		cons.setAccessible(true);
+
+		this.clazz = clazz;
+		this.constructor = lookup.unreflectConstructor(cons).asType(CONSTRUCTOR_TYPE);
+
+		var columnFields = new ArrayList<ColumnField>();
+		for (var field : clazz.getDeclaredFields()) {
+			var annotation = field.getAnnotation(Column.class);
+			if (annotation != null) {
+				field.setAccessible(true);
+				columnFields.add(new ColumnField(annotation.value(), field.getType(),
+						lookup.unreflectSetter(field).asType(SETTER_TYPE),
+						lookup.unreflectGetter(field).asType(GETTER_TYPE)));
+			}
+		}
+		this.fields = columnFields.toArray(new ColumnField[0]);
+
+		var table = clazz.getAnnotation(Table.class).value();
+		this.tableName = table.isEmpty() ? ORMUtils.toSnakeCase(clazz.getSimpleName()) : table;
+		this.columns = columnFields.stream().map(f -> f.column).toList();
+		this.insertQuery = getInsertQuery(columns);
+		this.generated = null;
+	}
+
+	/**
+	 * Returns the mapper of given class, building it on first use.
+	 * 
+	 * @param clazz a class annotated with @Table
+	 * @return
+	 * @throws ReflectiveOperationException if class has no @Table annotation or no
+	 *                                      args constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ClassMapper<T> of(Class<?> clazz) throws ReflectiveOperationException {
+		var mapper = MAPPERS.get(clazz);
+		if (mapper == null) {
+			if (clazz.getAnnotation(Table.class) == null)
+				throw new IllegalAccessException(
+						"Class " + clazz.getSimpleName() + " has no annotation " + Table.class.getName());
+
+			var generated = generated(clazz);
+			mapper = generated != null ? new ClassMapper<>(generated) : new ClassMapper<>(clazz);
+			var existing = MAPPERS.putIfAbsent(clazz, mapper);
+			if (existing != null)
+				mapper = existing;
+		}
+		return (ClassMapper<T>) mapper;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> EntityMapper<T> generated(Class<?> clazz) throws ReflectiveOperationException {
+		Class<?> mapperClass;
+		try {
+			mapperClass = Class.forName(EntityMapper.mapperName(clazz), true, clazz.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			// not compiled with MapperProcessor, or mapper could not be generated
+			return null;
+		}
+		var mapper = (EntityMapper<T>) mapperClass.getConstructor().newInstance();
+		return mapper.getMappedClass() == clazz ? mapper : null;
+	}
+
+	/**
+	 * Returns the mapper generated at compile time for the mapped class, or null
+	 * if class is mapped by reflection.
+	 * 
+	 * @return
+	 */
+	public EntityMapper<T> getGeneratedMapper() {
+		return generated;
+	}
+
+	public Class<?> getMappedClass() {
+		return clazz;
+	}
+
+	/**
+	 * Returns the value of @Table annotation, or the snake case name of the class
+	 * if annotation has no value.
+	 * 
+	 * @return
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Returns the columns of the @Column annotated fields, in declaration order.
+	 * 
+	 * @return
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns an insert query for all mapped columns, with one parameter per
+	 * column in {@link #getColumns()} order.
+	 * 
+	 * @return
+	 */
+	public String getInsertQuery() {
+		return insertQuery;
+	}
+
+	/**
+	 * Returns an insert query for the given columns of the mapped table.
+	 * 
+	 * @param columns
+	 * @return
+	 */
+	public String getInsertQuery(List<String> columns) {
+		return "insert into " + tableName + " (" + String.join(",", columns) + ") values ("
+				+ String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+	}
+
+	/**
+	 * Reads the values of the @Column annotated fields of the given object, in
+	 * {@link #getColumns()} order.
+	 * 
+	 * @param dto
+	 * @return
+	 * @throws SQLException
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Object> getValues(Object dto) throws SQLException {
+		if (generated != null)
+			return generated.getValues((T) clazz.cast(dto));
+		var values = new ArrayList<Object>(fields.length);
+		try {
+			for (var field : fields)
+				values.add((Object) field.getter.invokeExact(dto));
+		} catch (Throwable e) {
+			throw new SQLException("Could not read fields of " + clazz.getName(), e);
+		}
+		return values;
+	}
+
+	/**
+	 * Creates a row mapper which resolves column indexes on the first row it maps
+	 * and reuses them for every next row of the same result set.
+	 * 
+	 * @return
+	 */
+	public RowMapper<T> newRowMapper() {
+		return generated != null ? generated.newRowMapper() : new Binding();
+	}
+
+	// pools wrap result sets of every driver in the same class
+	private static Class<?> driverResultSet(ResultSet rset) {
+		if (rset instanceof DelegatingResultSet delegating) {
+			var innermost = delegating.getInnermostDelegate();
+			if (innermost != null)
+				return innermost.getClass();
+		}
+		return rset.getClass();
+	}
+
+	private static class ColumnField {
+
+		private final String column;
+		private final Class<?> type;
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+		// driver result set implementations known to not support getObject(index, class)
+		private final Set<Class<?>> untypedResultSets = ConcurrentHashMap.newKeySet();
+
+		private ColumnField(String column, Class<?> type, MethodHandle setter, MethodHandle getter) {
+			this.column = column;
+			this.type = type;
+			this.setter = setter;
+			this.getter = getter;
+		}
+	}
+
+	private class Binding implements RowMapper<T> {
+
+		private int[] indexes;
+		private boolean[] untyped;
+		private Class<?> driverResultSet;
+
+		private void bind(ResultSet rset) throws SQLException {
+			indexes = new int[fields.length];
+			untyped = new boolean[fields.length];
+			driverResultSet = driverResultSet(rset);
+			for (var i = 0; i < fields.length; i++) {
+				indexes[i] = rset.findColumn(fields[i].column);
+				untyped[i] = fields[i].untypedResultSets.contains(driverResultSet);
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T map(ResultSet rset) throws SQLException {
+			if (indexes == null)
+				bind(rset);
+
+			try {
+				var dto = (Object) constructor.invokeExact();
+				for (var i = 0; i < fields.length; i++) {
+					var field = fields[i];
+					// get object from result set and cast it to field's class
+					Object value = null;
+					if (untyped[i]) {
+						value = rset.getObject(indexes[i]);
+					} else {
+						try {
+							value = rset.getObject(indexes[i], field.type);
+						} catch (SQLFeatureNotSupportedException | UnsupportedOperationException e) {
+							// getObject(index, class) may be unsupported in some jdbc drivers (ex sqlite),
+							// remember it so next rows and result sets of the driver do not fail again
+							field.untypedResultSets.add(driverResultSet);
+							untyped[i] = true;
+							value = rset.getObject(indexes[i]);
+						}
+					}
+					if (value != null || !field.type.isPrimitive())
+						field.setter.invokeExact(dto, value);
+				}
+				return (T) dto;
+			} catch (SQLException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException("Could not map result set to " + clazz.getName(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package gr.kgdev.sqlemur.orm;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Mapper of a class annotated with @Table, generated at compile time by
+ * {@link gr.kgdev.sqlemur.processor.MapperProcessor}. Generated mappers read
+ * columns with typed getters and access fields directly (or through their
+ * setters and getters when fields are private), without reflection.
+ * {@link ClassMapper} uses the generated mapper of a class when there is one.
+ *
+ * @param <T>
+ */
+public interface EntityMapper<T> {
+
+	/**
+	 * Suffix of generated mapper classes, which live in the package of their
+	 * entity and are named after its nested simple names, ex Order_Line for
+	 * Order.Line.
+	 */
+	public static final String SUFFIX = "_SqlemurMapper";
+
+	public Class<T> getMappedClass();
+
+	/**
+	 * Returns the value of @Table annotation, or the snake case name of the class
+	 * if annotation has no value.
+	 *
+	 * @return
+	 */
+	public String getTableName();
+
+	/**
+	 * Returns the columns of the @Column annotated fields, in declaration order.
+	 *
+	 * @return
+	 */
+	public List<String> getColumns();
+
+	/**
+	 * Creates a row mapper which resolves column indexes on the first row it maps
+	 * and reuses them for every next row of the same result set.
+	 *
+	 * @return
+	 */
+	public RowMapper<T> newRowMapper();
+
+	/**
+	 * Reads the values of the @Column annotated fields of the given entity, in
+	 * {@link #getColumns()} order.
+	 *
+	 * @param entity
+	 * @return
+	 */
+	public List<Object> getValues(T entity);
+
+	/**
+	 * Binds the @Column annotated fields of the given entity to statement
+	 * parameters, in {@link #getColumns()} order, starting from index.
+	 *
+	 * @param statement
+	 * @param index     first parameter index
+	 * @param entity
+	 * @return the index following the last bound parameter
+	 * @throws SQLException
+	 */
+	public default int bind(PreparedStatement statement, int index, T entity) throws SQLException {
+		return bind(statement, index, entity, null);
+	}
+
+	/**
+	 * Binds the fields of the given columns only, see
+	 * {@link #bind(PreparedStatement, int, Object)}.
+	 *
+	 * @param statement
+	 * @param index     first parameter index
+	 * @param entity
+	 * @param columns   whether each column of {@link #getColumns()} is bound, null
+	 *                  for all
+	 * @return the index following the last bound parameter
+	 * @throws SQLException
+	 */
+	public int bind(PreparedStatement statement, int index, T entity, boolean[] columns) throws SQLException;
+
+	/**
+	 * Marks the columns of the fields which are not null in the given entity,
+	 * leaving the rest as they are. Primitive fields are never null.
+	 *
+	 * @param entity
+	 * @param columns flag per column of {@link #getColumns()}
+	 */
+	public void markNonNull(T entity, boolean[] columns);
+
+	/**
+	 * Returns the indexes of the given columns in result set.
+	 *
+	 * @param rset
+	 * @param columns
+	 * @return
+	 * @throws SQLException
+	 */
+	public static int[] findColumns(ResultSet rset, List<String> columns) throws SQLException {
+		var indexes = new int[columns.size()];
+		for (var i = 0; i < indexes.length; i++)
+			indexes[i] = rset.findColumn(columns.get(i));
+		return indexes;
+	}
+
+	/**
+	 * Reads a column as the given type, falling back to the untyped value for
+	 * drivers not supporting {@link ResultSet#getObject(int, Class)} (ex sqlite).
+	 *
+	 * @param rset
+	 * @param index
+	 * @param type
+	 * @return
+	 * @throws SQLException
+	 */
+	public static <V> V getObject(ResultSet rset, int index, Class<V> type) throws SQLException {
+		try {
+			return rset.getObject(index, type);
+		} catch (SQLException | UnsupportedOperationException e) {
+			return type.cast(rset.getObject(index));
+		}
+	}
+
+	/**
+	 * Returns the name of the mapper generated for the given class.
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	public static String mapperName(Class<?> clazz) {
+		var packageName = clazz.getPackageName();
+		var nestedName = clazz.getName().substring(packageName.isEmpty() ? 0 : packageName.length() + 1);
+		return (packageName.isEmpty() ? "" : packageName + ".") + nestedName.replace('$', '_') + SUFFIX;
+	}
+}
@@ -1,6 +1,7 @@
 package gr.kgdev.sqlemur.orm;
 
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.LinkedHashMap;
 
 
@@ -40,32 +41,20 @@ public class ORMUtils {
 	 * @return
 	 * @throws Exception 
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T>T map(ResultSet rset, Class<?> clazz) throws Exception {
-	
-		if (clazz.getAnnotation(Table.class) == null)
-			throw new IllegalAccessException(
-					"Class " + clazz.getSimpleName() + " has no annotation " + Table.class.getName());
-	
-		var dto = clazz.getDeclaredConstructor().newInstance();
-	
-		for (var field : clazz.getDeclaredFields()) {
-			field.setAccessible(true);
-			var annotation = field.getAnnotation(Column.class);
-			if (annotation != null) {
-				// get object from result set and cast it to field's class
-				Object value = null;
-				try {
-					value = rset.getObject(((Column) annotation).value(), field.getType());
-				} catch(Exception e) {
-					// getObject(name, class) may be unsupported in some jdbc drivers (ex sqlite)
-					value = rset.getObject(((Column) annotation).value());
-				}
-				field.set(dto, value);
-			}
-		}
-	
-		return (T) dto;
+		return ClassMapper.<T>of(clazz).newRowMapper().map(rset);
+	}
+
+	/**
+	 * Creates a mapper of rows into the given class (which has @Table annotation and its fields have @Column annotation).
+	 * Column indexes are resolved on the first row, so use the returned mapper for a single result set.
+	 * 
+	 * @param clazz
+	 * @return
+	 * @throws Exception
+	 */
+	public static <T> RowMapper<T> rowMapper(Class<?> clazz) throws Exception {
+		return ClassMapper.<T>of(clazz).newRowMapper();
 	}
 
 
@@ -92,6 +81,26 @@ public class ORMUtils {
 		return dto;
 	}
 	
+	/**
+	 * Creates a mapper of rows into maps sharing a single {@link RowSchema}.
+	 * The schema is computed from result set metadata on the first row, so use the returned mapper for a single result set.
+	 * For mapping columns aliases are used.
+	 * 
+	 * @return
+	 */
+	public static RowMapper<Row> rowMapper() {
+		return new SchemaRowMapper(false);
+	}
+
+	/**
+	 * Same as {@link #rowMapper()} but columns aliases are converted to camel case.
+	 * 
+	 * @return
+	 */
+	public static RowMapper<Row> rowMapperCC() {
+		return new SchemaRowMapper(true);
+	}
+
 	public static LinkedHashMap<String, Object> mapCC(ResultSet rset) throws Exception {
 
 		var dto = new LinkedHashMap<String, Object> ();
@@ -177,4 +186,21 @@ public class ORMUtils {
 		return str;
 	}
 	
+	private static class SchemaRowMapper implements RowMapper<Row> {
+
+		private final boolean camelCase;
+		private RowSchema schema;
+
+		private SchemaRowMapper(boolean camelCase) {
+			this.camelCase = camelCase;
+		}
+
+		@Override
+		public Row map(ResultSet rset) throws SQLException {
+			if (schema == null)
+				schema = camelCase ? RowSchema.ofCamelCase(rset.getMetaData()) : RowSchema.of(rset.getMetaData());
+			return schema.read(rset);
+		}
+	}
+
 }
\ No newline at end of file
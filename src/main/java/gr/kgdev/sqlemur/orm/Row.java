@@ -0,0 +1,207 @@
+package gr.kgdev.sqlemur.orm;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A row of a result set as a map. Only values are stored per row, keys are held
+ * by a {@link RowSchema} shared by all rows of the same result set.
+ * Keys are iterated in columns order. Keys not belonging to the schema can
+ * still be added, they are kept in a separate map after the schema ones.
+ */
+public class Row extends AbstractMap<String, Object> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	// marks a schema key removed from this row
+	private static final Object ABSENT = new Object();
+
+	// not serialized, rows are replaced by plain maps (see writeReplace)
+	private final transient RowSchema schema;
+	private final transient Object[] values;
+	private int removed = 0;
+	private LinkedHashMap<String, Object> extra;
+
+	Row(RowSchema schema, Object[] values) {
+		this.schema = schema;
+		this.values = values;
+	}
+
+	// rows are serialized as plain maps, so the schema does not travel with them
+	private Object writeReplace() {
+		return new LinkedHashMap<>(this);
+	}
+
+	public RowSchema getSchema() {
+		return schema;
+	}
+
+	@Override
+	public int size() {
+		return values.length - removed + (extra != null ? extra.size() : 0);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		var index = schema.indexOf(key);
+		if (index >= 0)
+			return values[index] != ABSENT;
+		return extra != null && extra.containsKey(key);
+	}
+
+	@Override
+	public Object get(Object key) {
+		var index = schema.indexOf(key);
+		if (index >= 0)
+			return values[index] != ABSENT ? values[index] : null;
+		return extra != null ? extra.get(key) : null;
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		var index = schema.indexOf(key);
+		if (index >= 0) {
+			var previous = values[index];
+			values[index] = value;
+			if (previous == ABSENT) {
+				removed--;
+				return null;
+			}
+			return previous;
+		}
+		if (extra == null)
+			extra = new LinkedHashMap<>();
+		return extra.put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		var index = schema.indexOf(key);
+		if (index >= 0)
+			return removeAt(index);
+		return extra != null ? extra.remove(key) : null;
+	}
+
+	private Object removeAt(int index) {
+		var previous = values[index];
+		if (previous == ABSENT)
+			return null;
+		values[index] = ABSENT;
+		removed++;
+		return previous;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<>() {
+
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return Row.this.size();
+			}
+		};
+	}
+
+	private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+		private int next = 0;
+		private int last = -1;
+		private Iterator<Entry<String, Object>> extraIterator;
+
+		private EntryIterator() {
+			skipAbsent();
+		}
+
+		private void skipAbsent() {
+			while (next < values.length && values[next] == ABSENT)
+				next++;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next < values.length)
+				return true;
+			if (extraIterator == null && extra != null)
+				extraIterator = extra.entrySet().iterator();
+			return extraIterator != null && extraIterator.hasNext();
+		}
+
+		@Override
+		public Entry<String, Object> next() {
+			if (next < values.length) {
+				last = next++;
+				skipAbsent();
+				return new RowEntry(last);
+			}
+			if (!hasNext())
+				throw new NoSuchElementException();
+			last = -1;
+			return extraIterator.next();
+		}
+
+		@Override
+		public void remove() {
+			if (extraIterator != null && last < 0)
+				extraIterator.remove();
+			else if (last >= 0) {
+				removeAt(last);
+				last = -1;
+			} else
+				throw new IllegalStateException();
+		}
+	}
+
+	private class RowEntry implements Map.Entry<String, Object> {
+
+		private final int index;
+
+		private RowEntry(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String getKey() {
+			return schema.getKey(index);
+		}
+
+		@Override
+		public Object getValue() {
+			return values[index] != ABSENT ? values[index] : null;
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			var previous = getValue();
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Map.Entry<?, ?> e
+					&& getKey().equals(e.getKey())
+					&& (getValue() == null ? e.getValue() == null : getValue().equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			var value = getValue();
+			return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package gr.kgdev.sqlemur.orm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set into an object.
+ * Implementations may keep state bound to the result set they were first
+ * applied on (column indexes etc), so an instance must not be shared between
+ * result sets.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	public T map(ResultSet rset) throws SQLException;
+}
@@ -0,0 +1,125 @@
+package gr.kgdev.sqlemur.orm;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keys of the rows of a result set, computed once from its metadata and shared
+ * by every {@link Row} of that result set.
+ * When two columns resolve to the same key, the second one is disambiguated
+ * with its table name, the same way {@link ORMUtils#map(ResultSet)} does.
+ */
+public class RowSchema {
+
+	private final String[] keys;
+	private final HashMap<String, Integer> indexes;
+	// value slot of each result set column, columns resolving to the same key share a slot
+	private final int[] slots;
+
+	private RowSchema(String[] keys, HashMap<String, Integer> indexes, int[] slots) {
+		this.keys = keys;
+		this.indexes = indexes;
+		this.slots = slots;
+	}
+
+	/**
+	 * Creates schema using columns aliases as keys.
+	 * 
+	 * @param rsmd
+	 * @return
+	 * @throws SQLException
+	 */
+	public static RowSchema of(ResultSetMetaData rsmd) throws SQLException {
+		var builder = new Builder(rsmd.getColumnCount());
+		for (var i = 1; i <= rsmd.getColumnCount(); i++) {
+			var label = rsmd.getColumnLabel(i);
+			builder.add(builder.contains(label) ? rsmd.getTableName(i) + "." + label : label);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Creates schema using columns aliases converted to camel case as keys.
+	 * 
+	 * @param rsmd
+	 * @return
+	 * @throws SQLException
+	 */
+	public static RowSchema ofCamelCase(ResultSetMetaData rsmd) throws SQLException {
+		var builder = new Builder(rsmd.getColumnCount());
+		for (var i = 1; i <= rsmd.getColumnCount(); i++) {
+			var key = ORMUtils.toCamelCase(rsmd.getColumnLabel(i));
+			builder.add(builder.contains(key) ? key + " (" + rsmd.getTableName(i) + ")" : key);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reads current row of result set.
+	 * 
+	 * @param rset
+	 * @return
+	 * @throws SQLException
+	 */
+	public Row read(ResultSet rset) throws SQLException {
+		var values = new Object[keys.length];
+		for (var i = 0; i < slots.length; i++)
+			values[slots[i]] = rset.getObject(i + 1);
+		return new Row(this, values);
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	public String getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Returns the position of the given key or -1 if key does not belong to
+	 * schema.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public int indexOf(Object key) {
+		var index = indexes.get(key);
+		return index != null ? index : -1;
+	}
+
+	private static class Builder {
+
+		private final ArrayList<String> keys;
+		private final HashMap<String, Integer> indexes;
+		private final int[] slots;
+		private int column = 0;
+
+		private Builder(int columnCount) {
+			this.keys = new ArrayList<>(columnCount);
+			this.indexes = new HashMap<>(columnCount * 2);
+			this.slots = new int[columnCount];
+		}
+
+		private boolean contains(String key) {
+			return indexes.containsKey(key);
+		}
+
+		private void add(String key) {
+			var index = indexes.get(key);
+			if (index == null) {
+				index = keys.size();
+				keys.add(key);
+				indexes.put(key, index);
+			}
+			slots[column++] = index;
+		}
+
+		private RowSchema build() {
+			return new RowSchema(keys.toArray(new String[0]), indexes, slots);
+		}
+	}
+}
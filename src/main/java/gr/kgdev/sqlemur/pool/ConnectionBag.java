@@ -0,0 +1,139 @@
+package gr.kgdev.sqlemur.pool;
+
+import static gr.kgdev.sqlemur.pool.PoolEntry.IN_USE;
+import static gr.kgdev.sqlemur.pool.PoolEntry.NOT_IN_USE;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free container of pool entries. Entries are claimed by compare and set
+ * of their state, so borrow and return never take a lock.
+ * 
+ * Platform threads first look at the entries they returned recently, which
+ * keeps a connection hot on the same thread. Virtual threads are short lived
+ * and never reuse a thread local, so they go straight to the shared list.
+ * Returned entries are handed off directly to waiting threads.
+ */
+class ConnectionBag {
+
+	private static final int MAX_LOCAL_ENTRIES = 8;
+
+	private final CopyOnWriteArrayList<PoolEntry> shared = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<ArrayDeque<PoolEntry>> local = ThreadLocal.withInitial(ArrayDeque::new);
+	private final SynchronousQueue<PoolEntry> handoff = new SynchronousQueue<>(true);
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	/**
+	 * Claims an idle entry, or returns null if none is idle.
+	 * 
+	 * @return
+	 */
+	PoolEntry poll() {
+		if (!Thread.currentThread().isVirtual()) {
+			var recent = local.get();
+			for (var entry = recent.pollLast(); entry != null; entry = recent.pollLast()) {
+				if (entry.compareAndSet(NOT_IN_USE, IN_USE))
+					return entry;
+			}
+		}
+		for (var entry : shared) {
+			if (entry.compareAndSet(NOT_IN_USE, IN_USE))
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Waits for an entry to be returned to the bag.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return claimed entry or null if timeout elapsed
+	 * @throws InterruptedException
+	 */
+	PoolEntry await(long timeout, TimeUnit unit) throws InterruptedException {
+		waiters.incrementAndGet();
+		try {
+			// an entry may have been returned before this thread was counted as waiter
+			var entry = poll();
+			if (entry != null)
+				return entry;
+
+			var deadline = System.nanoTime() + unit.toNanos(timeout);
+			for (var remaining = unit.toNanos(timeout); remaining > 0; remaining = deadline - System.nanoTime()) {
+				entry = handoff.poll(remaining, TimeUnit.NANOSECONDS);
+				if (entry == null || entry.compareAndSet(NOT_IN_USE, IN_USE))
+					return entry;
+			}
+			return null;
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a new entry to the bag.
+	 * 
+	 * @param entry
+	 */
+	void add(PoolEntry entry) {
+		shared.add(entry);
+		// new idle entry may satisfy a waiter
+		if (entry.getState() == NOT_IN_USE)
+			offer(entry);
+	}
+
+	/**
+	 * Returns a borrowed entry to the bag.
+	 * 
+	 * @param entry
+	 */
+	void requite(PoolEntry entry) {
+		entry.setState(NOT_IN_USE);
+		if (offer(entry))
+			return;
+
+		if (!Thread.currentThread().isVirtual()) {
+			var recent = local.get();
+			if (recent.size() >= MAX_LOCAL_ENTRIES)
+				recent.pollFirst();
+			recent.addLast(entry);
+		}
+	}
+
+	private boolean offer(PoolEntry entry) {
+		for (var i = 0; waiters.get() > 0; i++) {
+			if (entry.getState() != NOT_IN_USE || handoff.offer(entry))
+				return true;
+			if ((i & 0xff) == 0xff)
+				LockSupport.parkNanos(10_000);
+			else
+				Thread.yield();
+		}
+		return false;
+	}
+
+	/**
+	 * Removes an entry from the bag. Entry must already be in
+	 * {@link PoolEntry#REMOVED} state.
+	 * 
+	 * @param entry
+	 */
+	void remove(PoolEntry entry) {
+		shared.remove(entry);
+	}
+
+	List<PoolEntry> entries() {
+		return shared;
+	}
+
+	int getWaiters() {
+		return waiters.get();
+	}
+}
@@ -0,0 +1,457 @@
+package gr.kgdev.sqlemur.pool;
+
+import static gr.kgdev.sqlemur.pool.PoolEntry.IN_USE;
+import static gr.kgdev.sqlemur.pool.PoolEntry.NOT_IN_USE;
+import static gr.kgdev.sqlemur.pool.PoolEntry.REMOVED;
+import static gr.kgdev.sqlemur.pool.PoolEntry.RESERVED;
+
+import java.io.PrintWriter;
+import java.lang.System.Logger.Level;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Lightweight connection pool, an alternative to dbcp2 built for low latency
+ * borrow and return under high concurrency. Borrow and return do not take
+ * locks (see {@link ConnectionBag}), waiting threads park, which suits virtual
+ * threads.
+ * 
+ * Connections idle for more than the validation interval are validated on
+ * borrow, connections older than max lifetime are retired, and connections
+ * held for more than the leak detection threshold are logged along with the
+ * stack trace of their borrower.
+ * 
+ * Pool starts on first {@link #getConnection()} and its settings can be
+ * changed while running.
+ */
+public class LemurDataSource implements DataSource, AutoCloseable {
+
+	private static final System.Logger LOGGER = System.getLogger(LemurDataSource.class.getName());
+	// waiting threads wake up at least that often, to create connections when slots free up
+	private static final long MAX_AWAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final ConnectionBag bag = new ConnectionBag();
+	private final AtomicInteger total = new AtomicInteger();
+	private volatile String driverClassName;
+	private volatile String url;
+	private volatile String username;
+	private volatile String password;
+	private volatile int minIdle = 0;
+	private volatile int maxTotal = 8;
+	private volatile Duration maxWait = Duration.ofSeconds(30);
+	private volatile Duration maxLifetime = Duration.ofMinutes(30);
+	private volatile Duration idleTimeout = Duration.ofMinutes(10);
+	private volatile Duration validationInterval = Duration.ofMillis(500);
+	private volatile Duration validationTimeout = Duration.ofSeconds(5);
+	private volatile Duration leakDetectionThreshold = Duration.ZERO;
+	private volatile Driver driver;
+	private volatile ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+	private PrintWriter logWriter;
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed)
+			throw new SQLException("Pool is closed");
+		if (driver == null)
+			start();
+
+		var deadline = System.nanoTime() + maxWait.toNanos();
+		while (true) {
+			var entry = bag.poll();
+			if (entry == null && reserveSlot())
+				entry = createEntry(IN_USE);
+			if (entry == null) {
+				try {
+					entry = bag.await(Math.min(MAX_AWAIT_NANOS, Math.max(0, deadline - System.nanoTime())),
+							TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a connection", e);
+				}
+			}
+
+			if (entry != null) {
+				if (isUsable(entry))
+					return borrowed(entry);
+				retire(entry);
+			} else if (System.nanoTime() - deadline >= 0) {
+				throw new SQLTransientConnectionException("Timeout after " + maxWait.toMillis()
+						+ "ms waiting for a connection, active " + getActive() + ", max " + maxTotal);
+			}
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Pool connections use the configured credentials");
+	}
+
+	private synchronized void start() throws SQLException {
+		if (driver != null)
+			return;
+		try {
+			driver = (Driver) Class.forName(driverClassName).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new SQLException("Could not load driver " + driverClassName, e);
+		}
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			var thread = new Thread(r, "sqlemur-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, 0, housekeepingPeriod(), TimeUnit.MILLISECONDS);
+	}
+
+	private long housekeepingPeriod() {
+		var leakMillis = leakDetectionThreshold.toMillis();
+		return leakMillis > 0 ? Math.max(1000, Math.min(30_000, leakMillis / 2)) : 30_000;
+	}
+
+	private boolean reserveSlot() {
+		for (var current = total.get(); current < maxTotal; current = total.get()) {
+			if (total.compareAndSet(current, current + 1))
+				return true;
+		}
+		return false;
+	}
+
+	private PoolEntry createEntry(int state) throws SQLException {
+		try {
+			var props = new Properties();
+			if (username != null)
+				props.setProperty("user", username);
+			if (password != null)
+				props.setProperty("password", password);
+			var connection = driver.connect(url, props);
+			if (connection == null)
+				throw new SQLException("Driver " + driverClassName + " does not accept url " + url);
+			var entry = new PoolEntry(connection, state);
+			bag.add(entry);
+			return entry;
+		} catch (SQLException | RuntimeException e) {
+			total.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private boolean isUsable(PoolEntry entry) {
+		var now = System.nanoTime();
+		if (now - entry.createdAt > maxLifetime.toNanos())
+			return false;
+		if (now - entry.lastAccessed < validationInterval.toNanos())
+			return true;
+		try {
+			return entry.connection.isValid((int) Math.max(1, validationTimeout.toSeconds()));
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private Connection borrowed(PoolEntry entry) {
+		entry.borrowedAt = System.nanoTime();
+		entry.leakReported = false;
+		entry.borrowTrace = leakDetectionThreshold.isZero() ? null
+				: new Exception("Connection borrowed by " + Thread.currentThread());
+		return new PooledConnection(this, entry);
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool.
+	 * 
+	 * @param entry
+	 */
+	void release(PoolEntry entry) {
+		entry.lastAccessed = System.nanoTime();
+		entry.borrowTrace = null;
+		if (entry.leakReported)
+			LOGGER.log(Level.INFO, "Previously reported leaked connection was returned to the pool");
+		if (!entry.evict && !closed && total.get() <= maxTotal
+				&& entry.lastAccessed - entry.createdAt < maxLifetime.toNanos() && resetState(entry)) {
+			bag.requite(entry);
+		} else {
+			retire(entry);
+		}
+	}
+
+	private boolean resetState(PoolEntry entry) {
+		try {
+			var connection = entry.connection;
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			connection.clearWarnings();
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void retire(PoolEntry entry) {
+		entry.setState(REMOVED);
+		bag.remove(entry);
+		total.decrementAndGet();
+		try {
+			entry.connection.close();
+		} catch (SQLException e) {
+			LOGGER.log(Level.DEBUG, "Could not close retired connection", e);
+		}
+	}
+
+	private void housekeep() {
+		try {
+			var now = System.nanoTime();
+			var leakNanos = leakDetectionThreshold.toNanos();
+			var idle = 0;
+			for (var entry : bag.entries()) {
+				var state = entry.getState();
+				if (state == NOT_IN_USE) {
+					var expired = now - entry.createdAt > maxLifetime.toNanos();
+					var idleTooLong = now - entry.lastAccessed > idleTimeout.toNanos() && total.get() > minIdle;
+					var overLimit = total.get() > maxTotal;
+					if ((expired || idleTooLong || overLimit) && entry.compareAndSet(NOT_IN_USE, RESERVED))
+						retire(entry);
+					else
+						idle++;
+				} else if (state == IN_USE && leakNanos > 0 && !entry.leakReported
+						&& now - entry.borrowedAt > leakNanos) {
+					var trace = entry.borrowTrace;
+					if (trace != null) {
+						entry.leakReported = true;
+						LOGGER.log(Level.WARNING, "Connection leak detected, connection is held for more than "
+								+ leakDetectionThreshold.toMillis() + "ms", trace);
+					}
+				}
+			}
+			for (; idle < minIdle && !closed && reserveSlot(); idle++)
+				createEntry(NOT_IN_USE);
+		} catch (Throwable t) {
+			LOGGER.log(Level.WARNING, "Pool housekeeping failed", t);
+		}
+	}
+
+	/**
+	 * Closes all idle connections and stops the pool. Borrowed connections are
+	 * closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (housekeeper != null)
+			housekeeper.shutdownNow();
+		for (var entry : bag.entries()) {
+			if (entry.compareAndSet(NOT_IN_USE, RESERVED))
+				retire(entry);
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int getActive() {
+		var active = 0;
+		for (var entry : bag.entries()) {
+			if (entry.getState() == IN_USE)
+				active++;
+		}
+		return active;
+	}
+
+	public int getIdle() {
+		var idle = 0;
+		for (var entry : bag.entries()) {
+			if (entry.getState() == NOT_IN_USE)
+				idle++;
+		}
+		return idle;
+	}
+
+	public int getTotal() {
+		return total.get();
+	}
+
+	public int getWaiting() {
+		return bag.getWaiters();
+	}
+
+	public String getDriverClassName() {
+		return driverClassName;
+	}
+
+	public void setDriverClassName(String driverClassName) {
+		this.driverClassName = driverClassName;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * Sets the number of idle connections the pool keeps open. When raised on a
+	 * started pool, connections are opened right away.
+	 * 
+	 * @param minIdle
+	 */
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+		housekeepNow();
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Sets the max number of open connections. When lowered, idle connections
+	 * above the limit are closed right away and borrowed ones when returned.
+	 * 
+	 * @param maxTotal
+	 */
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+		housekeepNow();
+	}
+
+	private void housekeepNow() {
+		var executor = housekeeper;
+		if (executor != null && !closed) {
+			try {
+				executor.execute(this::housekeep);
+			} catch (RejectedExecutionException e) {
+				// closed meanwhile
+			}
+		}
+	}
+
+	public Duration getMaxWait() {
+		return maxWait;
+	}
+
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public Duration getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	public void setMaxLifetime(Duration maxLifetime) {
+		this.maxLifetime = maxLifetime;
+	}
+
+	public Duration getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public Duration getValidationInterval() {
+		return validationInterval;
+	}
+
+	/**
+	 * Sets for how long after its last use a connection is handed out without
+	 * validation.
+	 * 
+	 * @param validationInterval
+	 */
+	public void setValidationInterval(Duration validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public Duration getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	public void setValidationTimeout(Duration validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public Duration getLeakDetectionThreshold() {
+		return leakDetectionThreshold;
+	}
+
+	/**
+	 * Sets for how long a connection can be held before it is reported as leaked.
+	 * Zero disables leak detection. Must be set before the pool starts.
+	 * 
+	 * @param leakDetectionThreshold
+	 */
+	public void setLeakDetectionThreshold(Duration leakDetectionThreshold) {
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		throw new SQLException(getClass().getName() + " is not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+}
@@ -0,0 +1,45 @@
+package gr.kgdev.sqlemur.pool;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A physical connection held by the pool, with its borrow state.
+ */
+class PoolEntry {
+
+	static final int NOT_IN_USE = 0;
+	static final int IN_USE = 1;
+	static final int RESERVED = 2;
+	static final int REMOVED = -1;
+
+	final Connection connection;
+	final long createdAt;
+	volatile long lastAccessed;
+	volatile long borrowedAt;
+	// captured on borrow when leak detection is enabled
+	volatile Throwable borrowTrace;
+	volatile boolean leakReported;
+	// set when connection is known to be broken, it is removed on return
+	volatile boolean evict;
+	private final AtomicInteger state;
+
+	PoolEntry(Connection connection, int state) {
+		this.connection = connection;
+		this.createdAt = System.nanoTime();
+		this.lastAccessed = createdAt;
+		this.state = new AtomicInteger(state);
+	}
+
+	int getState() {
+		return state.get();
+	}
+
+	boolean compareAndSet(int expected, int update) {
+		return state.compareAndSet(expected, update);
+	}
+
+	void setState(int update) {
+		state.set(update);
+	}
+}
@@ -0,0 +1,57 @@
+package gr.kgdev.sqlemur.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.dbcp2.DelegatingConnection;
+
+/**
+ * Connection handle given to the borrower. Closing it returns the physical
+ * connection to the pool. A new handle is created per borrow, so a handle
+ * kept after close can not reach a connection used by someone else.
+ */
+class PooledConnection extends DelegatingConnection<Connection> {
+
+	private final LemurDataSource pool;
+	private final PoolEntry entry;
+	private boolean released = false;
+
+	PooledConnection(LemurDataSource pool, PoolEntry entry) {
+		super(entry.connection);
+		this.pool = pool;
+		this.entry = entry;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (released)
+			return;
+		released = true;
+		try {
+			// closes statements opened through this handle
+			passivate();
+		} finally {
+			pool.release(entry);
+		}
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return released || super.isClosed();
+	}
+
+	@Override
+	protected void checkOpen() throws SQLException {
+		if (released)
+			throw new SQLException("Connection is closed.");
+		super.checkOpen();
+	}
+
+	@Override
+	protected void handleException(SQLException e) throws SQLException {
+		// connection exceptions (sql state class 08) leave the connection unusable
+		if (e.getSQLState() != null && e.getSQLState().startsWith("08"))
+			entry.evict = true;
+		throw e;
+	}
+}
@@ -0,0 +1,366 @@
+package gr.kgdev.sqlemur.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import gr.kgdev.sqlemur.orm.Column;
+import gr.kgdev.sqlemur.orm.EntityMapper;
+import gr.kgdev.sqlemur.orm.ORMUtils;
+import gr.kgdev.sqlemur.orm.Table;
+
+/**
+ * Generates an {@link EntityMapper} for every class annotated with @Table. The
+ * mapper reads columns with typed getters and accesses @Column fields
+ * directly, or through their setters and getters when fields are private.
+ * Classes which cannot be mapped without reflection (ex private fields without
+ * accessors, no accessible no args constructor) are reported with a warning
+ * and keep being mapped by reflection at runtime.
+ */
+@SupportedAnnotationTypes("gr.kgdev.sqlemur.orm.Table")
+public class MapperProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (var element : roundEnv.getElementsAnnotatedWith(Table.class)) {
+			if (element.getKind() != ElementKind.CLASS)
+				continue;
+			var type = (TypeElement) element;
+			try {
+				var properties = properties(type);
+				if (properties != null)
+					write(type, properties);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Could not write mapper of " + type + ": " + e.getMessage(), type);
+			}
+		}
+		// @Table is left unclaimed, so other processors can handle it too
+		return false;
+	}
+
+	/**
+	 * Resolves how each @Column field is read and written, or returns null if
+	 * class cannot be mapped without reflection.
+	 *
+	 */
+	private List<Property> properties(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty())
+			return skip(type, "it is abstract or generic");
+		for (Element enclosing = type; enclosing instanceof TypeElement typeElement; enclosing = enclosing
+				.getEnclosingElement()) {
+			if (typeElement.getModifiers().contains(Modifier.PRIVATE))
+				return skip(type, "it is not accessible from its package");
+			if (typeElement.getNestingKind() == NestingKind.MEMBER
+					&& !typeElement.getModifiers().contains(Modifier.STATIC))
+				return skip(type, "it is an inner class");
+		}
+		var hasConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+				.anyMatch(c -> c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE));
+		if (!hasConstructor)
+			return skip(type, "it has no accessible no args constructor");
+
+		var properties = new ArrayList<Property>();
+		for (var field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			var column = field.getAnnotation(Column.class);
+			if (column == null || field.getModifiers().contains(Modifier.STATIC))
+				continue;
+			if (field.getModifiers().contains(Modifier.FINAL))
+				return skip(type, "field " + field.getSimpleName() + " is final");
+
+			var name = field.getSimpleName().toString();
+			if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+				properties.add(new Property(column.value(), field.asType(), "entity." + name, "entity." + name + " = "));
+				continue;
+			}
+			var capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			var getter = accessor(type, field, "get" + capitalized, 0);
+			if (getter == null && field.asType().getKind() == TypeKind.BOOLEAN)
+				getter = accessor(type, field, "is" + capitalized, 0);
+			var setter = accessor(type, field, "set" + capitalized, 1);
+			if (getter == null || setter == null)
+				return skip(type, "private field " + name + " has no accessible getter and setter");
+			properties.add(new Property(column.value(), field.asType(), "entity." + getter + "()",
+					"entity." + setter + "("));
+		}
+		return properties;
+	}
+
+	private String accessor(TypeElement type, VariableElement field, String name, int parameters) {
+		var types = processingEnv.getTypeUtils();
+		for (var method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (!method.getSimpleName().contentEquals(name) || method.getParameters().size() != parameters
+					|| method.getModifiers().contains(Modifier.PRIVATE)
+					|| method.getModifiers().contains(Modifier.STATIC))
+				continue;
+			var accessorType = parameters == 0 ? method.getReturnType() : method.getParameters().get(0).asType();
+			if (types.isSameType(accessorType, field.asType()))
+				return name;
+		}
+		return null;
+	}
+
+	private List<Property> skip(TypeElement type, String reason) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+				"No mapper generated for " + type + ", it is mapped by reflection since " + reason, type);
+		return null;
+	}
+
+	private void write(TypeElement type, List<Property> properties) throws IOException {
+		var elements = processingEnv.getElementUtils();
+		var packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		var binaryName = elements.getBinaryName(type).toString();
+		var simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+				.replace('$', '_') + EntityMapper.SUFFIX;
+		var entity = type.getQualifiedName().toString();
+		var table = type.getAnnotation(Table.class).value();
+		var tableName = table.isEmpty() ? ORMUtils.toSnakeCase(type.getSimpleName().toString()) : table;
+
+		var code = new StringBuilder();
+		if (!packageName.isEmpty())
+			code.append("package ").append(packageName).append(";\n\n");
+		code.append("/**\n * Mapper of {@link ").append(entity).append("}, generated by ")
+				.append(MapperProcessor.class.getSimpleName()).append(".\n */\n");
+		code.append("@javax.annotation.processing.Generated(\"").append(MapperProcessor.class.getName())
+				.append("\")\n");
+		code.append("public final class ").append(simpleName).append(" implements gr.kgdev.sqlemur.orm.EntityMapper<")
+				.append(entity).append("> {\n\n");
+
+		code.append("\tprivate static final java.util.List<String> COLUMNS = java.util.List.of(");
+		for (var i = 0; i < properties.size(); i++)
+			code.append(i > 0 ? ", " : "").append(literal(properties.get(i).column()));
+		code.append(");\n\n");
+
+		code.append("\t@Override\n\tpublic Class<").append(entity).append("> getMappedClass() {\n\t\treturn ")
+				.append(entity).append(".class;\n\t}\n\n");
+		code.append("\t@Override\n\tpublic String getTableName() {\n\t\treturn ").append(literal(tableName))
+				.append(";\n\t}\n\n");
+		code.append("\t@Override\n\tpublic java.util.List<String> getColumns() {\n\t\treturn COLUMNS;\n\t}\n\n");
+
+		code.append("\t@Override\n\tpublic gr.kgdev.sqlemur.orm.RowMapper<").append(entity)
+				.append("> newRowMapper() {\n");
+		code.append("\t\treturn new gr.kgdev.sqlemur.orm.RowMapper<>() {\n\n");
+		code.append("\t\t\tprivate int[] indexes;\n\n");
+		code.append("\t\t\t@Override\n\t\t\tpublic ").append(entity)
+				.append(" map(java.sql.ResultSet rset) throws java.sql.SQLException {\n");
+		code.append("\t\t\t\tif (indexes == null)\n");
+		code.append("\t\t\t\t\tindexes = gr.kgdev.sqlemur.orm.EntityMapper.findColumns(rset, COLUMNS);\n");
+		code.append("\t\t\t\tvar entity = new ").append(entity).append("();\n");
+		for (var i = 0; i < properties.size(); i++)
+			code.append("\t\t\t\t").append(read(properties.get(i), "indexes[" + i + "]")).append("\n");
+		code.append("\t\t\t\treturn entity;\n\t\t\t}\n\t\t};\n\t}\n\n");
+
+		code.append("\t@Override\n\tpublic java.util.List<Object> getValues(").append(entity)
+				.append(" entity) {\n");
+		code.append("\t\tvar values = new java.util.ArrayList<Object>(").append(properties.size()).append(");\n");
+		for (var property : properties)
+			code.append("\t\tvalues.add(").append(property.getter()).append(");\n");
+		code.append("\t\treturn values;\n\t}\n\n");
+
+		code.append("\t@Override\n\tpublic int bind(java.sql.PreparedStatement statement, int index, ").append(entity)
+				.append(" entity, boolean[] columns) throws java.sql.SQLException {\n");
+		for (var i = 0; i < properties.size(); i++)
+			code.append("\t\tif (columns == null || columns[").append(i).append("])\n\t\t\t")
+					.append(bind(properties.get(i))).append("\n");
+		code.append("\t\treturn index;\n\t}\n\n");
+
+		code.append("\t@Override\n\tpublic void markNonNull(").append(entity)
+				.append(" entity, boolean[] columns) {\n");
+		for (var i = 0; i < properties.size(); i++) {
+			var property = properties.get(i);
+			if (property.type().getKind().isPrimitive())
+				code.append("\t\tcolumns[").append(i).append("] = true;\n");
+			else
+				code.append("\t\tcolumns[").append(i).append("] |= ").append(property.getter())
+						.append(" != null;\n");
+		}
+		code.append("\t}\n}\n");
+
+		var file = processingEnv.getFiler()
+				.createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type);
+		try (var writer = file.openWriter()) {
+			writer.write(code.toString());
+		}
+	}
+
+	/**
+	 * Returns the statement reading the given column into the property of entity.
+	 * Null values leave primitive fields untouched.
+	 *
+	 */
+	private String read(Property property, String index) {
+		var type = property.type();
+		var getter = getter(type);
+		if (type.getKind().isPrimitive() && getter != null)
+			return "{ var value = rset." + getter + "(" + index + "); if (!rset.wasNull()) "
+					+ property.set("value") + "; }";
+		if (type.getKind().isPrimitive())
+			return "{ var value = gr.kgdev.sqlemur.orm.EntityMapper.getObject(rset, " + index + ", "
+					+ boxed(type) + ".class); if (value != null) " + property.set("value") + "; }";
+
+		var boxedGetter = getter(unboxed(type));
+		if (boxedGetter != null)
+			return "{ var value = rset." + boxedGetter + "(" + index + "); " + property.set(
+					"rset.wasNull() ? null : " + type + ".valueOf(value)") + "; }";
+		if (getter != null)
+			return property.set("rset." + getter + "(" + index + ")") + ";";
+		return property.set("gr.kgdev.sqlemur.orm.EntityMapper.getObject(rset, " + index + ", "
+				+ processingEnv.getTypeUtils().erasure(type) + ".class)") + ";";
+	}
+
+	/**
+	 * Returns the statement binding the property of entity to the next parameter.
+	 *
+	 */
+	private String bind(Property property) {
+		var type = property.type();
+		var value = property.getter();
+		if (type.getKind() == TypeKind.CHAR)
+			return "statement.setString(index++, String.valueOf(" + value + "));";
+		if (type.getKind().isPrimitive())
+			return "statement." + setter(type) + "(index++, " + value + ");";
+
+		var unboxed = unboxed(type);
+		var sqlType = sqlType(unboxed != null ? unboxed : type);
+		String bound;
+		if (unboxed != null && unboxed.getKind() == TypeKind.CHAR)
+			bound = "statement.setString(index, String.valueOf(value))";
+		else if (setter(unboxed != null ? unboxed : type) != null)
+			bound = "statement." + setter(unboxed != null ? unboxed : type) + "(index, value)";
+		else
+			bound = "gr.kgdev.sqlemur.core.ParamBinders.binder(value.getClass()).bind(statement, index, value)";
+		return "{ var value = " + value + "; if (value == null) statement.setNull(index++, java.sql.Types." + sqlType
+				+ "); else { " + bound + "; index++; } }";
+	}
+
+	private String getter(TypeMirror type) {
+		if (type == null)
+			return null;
+		switch (type.getKind()) {
+		case INT:
+			return "getInt";
+		case LONG:
+			return "getLong";
+		case SHORT:
+			return "getShort";
+		case BYTE:
+			return "getByte";
+		case DOUBLE:
+			return "getDouble";
+		case FLOAT:
+			return "getFloat";
+		case BOOLEAN:
+			return "getBoolean";
+		case ARRAY:
+			return type.toString().equals("byte[]") ? "getBytes" : null;
+		case DECLARED:
+			switch (processingEnv.getTypeUtils().erasure(type).toString()) {
+			case "java.lang.String":
+				return "getString";
+			case "java.math.BigDecimal":
+				return "getBigDecimal";
+			case "java.sql.Timestamp":
+				return "getTimestamp";
+			case "java.sql.Date":
+				return "getDate";
+			case "java.sql.Time":
+				return "getTime";
+			default:
+				return null;
+			}
+		default:
+			return null;
+		}
+	}
+
+	private String setter(TypeMirror type) {
+		var getter = getter(type);
+		return getter != null ? "s" + getter.substring(1) : null;
+	}
+
+	private String sqlType(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+			return "INTEGER";
+		case LONG:
+			return "BIGINT";
+		case SHORT:
+			return "SMALLINT";
+		case BYTE:
+			return "TINYINT";
+		case DOUBLE:
+			return "DOUBLE";
+		case FLOAT:
+			return "REAL";
+		case BOOLEAN:
+			return "BOOLEAN";
+		case ARRAY:
+			return "VARBINARY";
+		case DECLARED:
+			switch (processingEnv.getTypeUtils().erasure(type).toString()) {
+			case "java.math.BigDecimal":
+				return "NUMERIC";
+			case "java.sql.Timestamp":
+				return "TIMESTAMP";
+			case "java.sql.Date":
+				return "DATE";
+			case "java.sql.Time":
+				return "TIME";
+			default:
+				// same as SQLemur binds null params
+				return "VARCHAR";
+			}
+		default:
+			return "VARCHAR";
+		}
+	}
+
+	private TypeMirror unboxed(TypeMirror type) {
+		try {
+			return processingEnv.getTypeUtils().unboxedType(type);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private String boxed(TypeMirror type) {
+		return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind()))
+				.getQualifiedName().toString();
+	}
+
+	private static String literal(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * A @Column field, along with the expressions reading and writing it.
+	 */
+	private record Property(String column, TypeMirror type, String getter, String setterPrefix) {
+
+		private String set(String value) {
+			return setterPrefix.endsWith("(") ? setterPrefix + value + ")" : setterPrefix + value;
+		}
+	}
+}
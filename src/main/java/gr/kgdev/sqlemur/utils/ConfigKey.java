@@ -0,0 +1,61 @@
+package gr.kgdev.sqlemur.utils;
+
+import java.util.function.Function;
+
+/**
+ * A typed configuration key along with its default value. Values are parsed
+ * once per loaded configuration, see {@link SQLemurProperties#get(ConfigKey)}.
+ *
+ * @param <T>
+ */
+public final class ConfigKey<T> {
+
+	private final String name;
+	private final Class<T> type;
+	private final Function<String, T> parser;
+	private final T defaultValue;
+
+	private ConfigKey(String name, Class<T> type, Function<String, T> parser, T defaultValue) {
+		this.name = name;
+		this.type = type;
+		this.parser = parser;
+		this.defaultValue = defaultValue;
+	}
+
+	public static ConfigKey<Integer> ofInt(String name, int defaultValue) {
+		return new ConfigKey<>(name, Integer.class, value -> Integer.valueOf(value.trim()), defaultValue);
+	}
+
+	public static ConfigKey<Long> ofLong(String name, long defaultValue) {
+		return new ConfigKey<>(name, Long.class, value -> Long.valueOf(value.trim()), defaultValue);
+	}
+
+	public static ConfigKey<Boolean> ofBoolean(String name, boolean defaultValue) {
+		return new ConfigKey<>(name, Boolean.class, value -> Boolean.valueOf(value.trim()), defaultValue);
+	}
+
+	public static ConfigKey<String> ofString(String name, String defaultValue) {
+		return new ConfigKey<>(name, String.class, value -> value, defaultValue);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	public T getDefaultValue() {
+		return defaultValue;
+	}
+
+	T parse(String value) {
+		return parser.apply(value);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,67 @@
+package gr.kgdev.sqlemur.utils;
+
+/**
+ * Configuration keys of sqlemur, read from the loaded properties files.
+ */
+public final class SQLemurConfig {
+
+	/** pool implementation, dbcp2 or lemur */
+	public static final ConfigKey<String> POOL_TYPE = ConfigKey.ofString("sqlemur.pool.type", "dbcp2");
+	public static final ConfigKey<Integer> POOL_INITIAL_SIZE = ConfigKey.ofInt("sqlemur.pool.initialsize", 4);
+	/** max idle connections of dbcp2 pools, lemur pools keep initial size idle */
+	public static final ConfigKey<Integer> POOL_IDLE_SIZE = ConfigKey.ofInt("sqlemur.pool.idlesize", 16);
+	public static final ConfigKey<Integer> POOL_MAX_SIZE = ConfigKey.ofInt("sqlemur.pool.maxsize", 32);
+	public static final ConfigKey<Integer> POOL_MAX_WAIT_MILLIS = ConfigKey.ofInt("sqlemur.pool.maxwaitmillis", 10000);
+	public static final ConfigKey<Integer> POOL_MAX_LIFETIME_MILLIS = ConfigKey
+			.ofInt("sqlemur.pool.maxlifetimemillis", 1800000);
+	public static final ConfigKey<Integer> POOL_LEAK_DETECTION_MILLIS = ConfigKey
+			.ofInt("sqlemur.pool.leakdetectionmillis", 0);
+
+	/**
+	 * eager (default), lazy to create the primary pool on first use (replica pools are created on start) or
+	 * prewarm to open initial size connections on start
+	 */
+	public static final ConfigKey<String> STARTUP_MODE = ConfigKey.ofString("sqlemur.startup", "eager");
+	/** semicolon separated queries prepared on every prewarmed connection */
+	public static final ConfigKey<String> STARTUP_HOT_QUERIES = ConfigKey.ofString("sqlemur.startup.hotqueries", "");
+
+	public static final ConfigKey<Integer> QUERY_FETCH_SIZE = ConfigKey.ofInt("sqlemur.query.fetchsize", 1000);
+	public static final ConfigKey<Integer> BATCH_SIZE = ConfigKey.ofInt("sqlemur.batch.size", 1000);
+	public static final ConfigKey<Integer> EXPORT_BUFFER_SIZE = ConfigKey.ofInt("sqlemur.export.buffersize",
+			64 * 1024);
+	public static final ConfigKey<Integer> STATEMENT_CACHE_SIZE = ConfigKey.ofInt("sqlemur.statementcache.size", 64);
+	/** whether empty string params are bound as null */
+	public static final ConfigKey<Boolean> BIND_EMPTY_STRING_AS_NULL = ConfigKey
+			.ofBoolean("sqlemur.bind.emptystringasnull", false);
+	public static final ConfigKey<Integer> ASYNC_MAX_QUEUE = ConfigKey.ofInt("sqlemur.async.maxqueue", 1000);
+	/** 0 for unlimited transactions */
+	public static final ConfigKey<Integer> TRANSACTION_MAX_CONCURRENCY = ConfigKey
+			.ofInt("sqlemur.transaction.maxconcurrency", 0);
+
+	/** 0 for no result cache */
+	public static final ConfigKey<Long> RESULT_CACHE_MAX_WEIGHT = ConfigKey.ofLong("sqlemur.resultcache.maxweight", 0);
+	public static final ConfigKey<Long> RESULT_CACHE_TTL_MILLIS = ConfigKey.ofLong("sqlemur.resultcache.ttlmillis",
+			60000);
+
+	/** comma separated */
+	public static final ConfigKey<String> REPLICA_URLS = ConfigKey.ofString("sqlemur.replica.urls", "");
+	public static final ConfigKey<String> REPLICA_LOAD_BALANCER = ConfigKey.ofString("sqlemur.replica.loadbalancer",
+			"roundrobin");
+
+	/** 0 for no slow query log */
+	public static final ConfigKey<Long> SLOW_QUERY_THRESHOLD_MILLIS = ConfigKey
+			.ofLong("sqlemur.slowquery.thresholdmillis", 0);
+	/** comma separated columns whose params are not logged */
+	public static final ConfigKey<String> SLOW_QUERY_REDACT_COLUMNS = ConfigKey
+			.ofString("sqlemur.slowquery.redactcolumns", "password");
+	/** prefix explaining slow queries, ex "explain ", empty for no plans */
+	public static final ConfigKey<String> SLOW_QUERY_EXPLAIN = ConfigKey.ofString("sqlemur.slowquery.explain", "");
+	public static final ConfigKey<Long> SLOW_QUERY_EXPLAIN_INTERVAL_MILLIS = ConfigKey
+			.ofLong("sqlemur.slowquery.explainintervalmillis", 10000);
+
+	/** whether properties files are watched and pool settings re-applied on change */
+	public static final ConfigKey<Boolean> CONFIG_RELOAD = ConfigKey.ofBoolean("sqlemur.config.reload", false);
+
+	private SQLemurConfig() {
+	}
+}
@@ -1,104 +1,373 @@
 package gr.kgdev.sqlemur.utils;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.System.Logger.Level;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Properties loaded from the .properties files under the loaded root paths,
+ * ./sqlemur.properties by default. Files are read on first use into an
+ * immutable {@link Snapshot}, which caches parsed values, and read again on
+ * {@link #reload()} or, once {@link #watch()} is called, whenever a file
+ * changes.
+ */
 public class SQLemurProperties {
 
-	private static HashMap<String, Properties> propertiesMap = new HashMap<>();
-	
-	static {
-		loadProperties("./sqlemur.properties");
-	}
-	
+	private static final System.Logger LOGGER = System.getLogger(SQLemurProperties.class.getName());
+	private static final List<String> roots = new CopyOnWriteArrayList<>(List.of("./sqlemur.properties"));
+	private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+	// set in code, taking precedence over every file
+	private static final Map<String, String> overrides = new ConcurrentHashMap<>();
+	private static volatile Snapshot snapshot;
+	private static Thread watcher;
+
+	/**
+	 * Loads the .properties files under the given path, along with the ones
+	 * already loaded.
+	 *
+	 * @param rootPath a file or a directory
+	 */
 	public static void loadProperties(String rootPath) {
-		try {
-			Files.walk(Paths.get(rootPath))
-	        .filter(Files::isRegularFile)
-	        .filter(path -> path.toString().endsWith(".properties"))
-	        .forEach(path -> {
-	        	try (InputStream inputStream = new FileInputStream(path.toFile())) {
-					Properties props = new Properties();
-					props.load(inputStream);
-					propertiesMap.put(path.getFileName().toString(), props);
-		        } catch (IOException e) {
-	        		e.printStackTrace();
+		if (!roots.contains(rootPath))
+			roots.add(rootPath);
+		reload();
+	}
+
+	/**
+	 * Sets a property over the value of any file (ex from command line options),
+	 * reloading properties.
+	 *
+	 * @param key   property name, ex {@code SQLemurConfig.POOL_TYPE.getName()}
+	 * @param value
+	 */
+	public static void override(String key, String value) {
+		overrides.put(key, value);
+		reload();
+	}
+
+	/**
+	 * Removes all properties set by {@link #override(String, String)},
+	 * reloading properties.
+	 */
+	public static void clearOverrides() {
+		overrides.clear();
+		reload();
+	}
+
+	/**
+	 * Returns the current properties, loading them on first use.
+	 *
+	 * @return
+	 */
+	public static Snapshot snapshot() {
+		var current = snapshot;
+		if (current == null) {
+			synchronized (SQLemurProperties.class) {
+				current = snapshot;
+				if (current == null) {
+					current = load();
+					snapshot = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the value of the given key, or its default value if no file sets
+	 * it or it can not be parsed.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static <T> T get(ConfigKey<T> key) {
+		return snapshot().get(key);
+	}
+
+	/**
+	 * Reads all files again, notifying reload listeners if any property changed.
+	 */
+	public static void reload() {
+		Snapshot previous;
+		Snapshot current;
+		synchronized (SQLemurProperties.class) {
+			previous = snapshot;
+			current = load();
+			snapshot = current;
+		}
+		if (previous != null && !previous.values.equals(current.values)) {
+			LOGGER.log(Level.INFO, "Properties reloaded");
+			for (var listener : reloadListeners) {
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Properties reload listener failed", e);
+				}
+			}
+		}
+	}
+
+	private static Snapshot load() {
+		var files = new LinkedHashMap<String, Map<String, String>>();
+		for (var root : roots) {
+			try (var paths = Files.walk(Paths.get(root))) {
+				for (var path : paths.filter(Files::isRegularFile)
+						.filter(path -> path.toString().endsWith(".properties")).sorted().toList()) {
+					try (InputStream inputStream = Files.newInputStream(path)) {
+						var props = new Properties();
+						props.load(inputStream);
+						var values = new LinkedHashMap<String, String>();
+						for (var name : props.stringPropertyNames())
+							values.put(name, props.getProperty(name));
+						files.put(path.getFileName().toString(), Collections.unmodifiableMap(values));
+					}
+				}
+			} catch (NoSuchFileException e) {
+				LOGGER.log(Level.DEBUG, "No properties found at " + root);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Could not load properties from " + root, e);
+			}
+		}
+		return new Snapshot(files, Map.copyOf(overrides));
+	}
+
+	/**
+	 * Runs the given listener after every reload which changed properties.
+	 *
+	 * @param listener
+	 */
+	public static void addReloadListener(Runnable listener) {
+		reloadListeners.add(listener);
+	}
+
+	public static void removeReloadListener(Runnable listener) {
+		reloadListeners.remove(listener);
+	}
+
+	/**
+	 * Starts watching the loaded root paths on a daemon thread, reloading
+	 * properties when a file is created, changed or deleted. Does nothing if
+	 * already watching.
+	 */
+	public static synchronized void watch() {
+		if (watcher != null)
+			return;
+		watcher = Thread.ofPlatform().daemon().name("sqlemur-properties-watcher").start(SQLemurProperties::watchFiles);
+	}
+
+	/**
+	 * Stops watching files, if watching.
+	 */
+	public static synchronized void stopWatching() {
+		if (watcher != null)
+			watcher.interrupt();
+		watcher = null;
+	}
+
+	private static void watchFiles() {
+		try (var service = FileSystems.getDefault().newWatchService()) {
+			var watched = new HashSet<Path>();
+			register(service, watched);
+			while (!Thread.currentThread().isInterrupted()) {
+				var key = service.take();
+				// editors write files in steps, changes settling within the delay reload once
+				TimeUnit.MILLISECONDS.sleep(100);
+				for (; key != null; key = service.poll()) {
+					key.pollEvents();
+					key.reset();
 				}
-	        });
+				reload();
+				register(service, watched);
+			}
+		} catch (InterruptedException e) {
+			// stopped
 		} catch (IOException e) {
-    		e.printStackTrace();
+			LOGGER.log(Level.WARNING, "Could not watch properties files", e);
 		}
 	}
-	
-	@SuppressWarnings("unchecked")
-	public static <T>T getProperty(String fileKey, String key, Class<?> clazz) {
-		var value = propertiesMap.get(fileKey).get(key);
-		try {
-			var cons = clazz.getConstructor(String.class);
-			var returnedValue = cons.newInstance(value.toString());
-			return (T) returnedValue;
-		} catch (Exception e) {
-    		e.printStackTrace();
+
+	private static void register(WatchService service, HashSet<Path> watched) throws IOException {
+		for (var root : roots) {
+			var path = Paths.get(root).toAbsolutePath().normalize();
+			List<Path> directories;
+			if (Files.isDirectory(path)) {
+				try (var paths = Files.walk(path)) {
+					directories = paths.filter(Files::isDirectory).toList();
+				}
+			} else {
+				// the file may not exist yet, its directory is watched for its creation
+				directories = path.getParent() != null && Files.isDirectory(path.getParent())
+						? List.of(path.getParent())
+						: List.of();
+			}
+			for (var directory : directories) {
+				if (watched.add(directory))
+					directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			}
 		}
-		return null;
 	}
-	
+
+	@SuppressWarnings("unchecked")
+	public static <T> T getProperty(String fileKey, String key, Class<?> clazz) {
+		return (T) snapshot().get(fileKey, key, clazz);
+	}
+
 	@SuppressWarnings("unchecked")
-	public static <T>T getProperty(String fileKey, String key, Class<?> clazz, Object defaultValue) {
+	public static <T> T getProperty(String fileKey, String key, Class<?> clazz, Object defaultValue) {
 		var value = getProperty(fileKey, key, clazz);
 		return value != null ? (T) value : (T) defaultValue;
 	}
-	
+
 	/**
 	 * Returns the first matching key from all loaded properties
-	 * 
+	 *
 	 * @param key
 	 * @param clazz
 	 * @return
 	 */
 	@SuppressWarnings("unchecked")
-	public static <T>T getProperty(String key, Class<?> clazz) {
-		try {
-			Object value = null;
-			for (Properties props : propertiesMap.values()) {
-				value = props.get(key);
-				if (value != null)
-					break;
-			}
-			var cons = clazz.getConstructor(String.class);
-			var returnedValue = cons.newInstance(value.toString());
-			return (T) returnedValue;
-		} catch (Exception e) {
-    		e.printStackTrace();
-		}
-		return null;
+	public static <T> T getProperty(String key, Class<?> clazz) {
+		return (T) snapshot().get(null, key, clazz);
 	}
-	
+
 	/**
 	 * Returns the first matching key from all loaded properties
-	 * 
+	 *
 	 * @param key
 	 * @param clazz
 	 * @return
 	 */
 	@SuppressWarnings("unchecked")
-	public static <T>T getProperty(String key, Class<?> clazz, Object defaultValue) {
+	public static <T> T getProperty(String key, Class<?> clazz, Object defaultValue) {
 		var value = getProperty(key, clazz);
 		return value != null ? (T) value : (T) defaultValue;
 	}
-	
+
 	public static Properties getPropertiesFromFile(String fileNamePart) {
-		for (var key : propertiesMap.keySet()) {
-			if (key.contains(fileNamePart))
-				return propertiesMap.get(key);
+		for (var file : snapshot().files.entrySet()) {
+			if (file.getKey().contains(fileNamePart)) {
+				var props = new Properties();
+				props.putAll(file.getValue());
+				return props;
+			}
 		}
 		return null;
 	}
-	
-	
+
+	/**
+	 * Properties of all files as loaded at some point. Values are parsed on first
+	 * read and cached, snapshots are safe to share between threads.
+	 */
+	public static final class Snapshot {
+
+		private final Map<String, Map<String, String>> files;
+		// overrides win, then the first file setting a key, files are in load order
+		private final Map<String, String> values;
+		private final ConcurrentHashMap<Object, Optional<Object>> parsed = new ConcurrentHashMap<>();
+
+		private Snapshot(Map<String, Map<String, String>> files, Map<String, String> overrides) {
+			this.files = Collections.unmodifiableMap(files);
+			var values = new LinkedHashMap<String, String>(overrides);
+			for (var file : files.values())
+				file.forEach(values::putIfAbsent);
+			this.values = Collections.unmodifiableMap(values);
+		}
+
+		/**
+		 * Returns the value of the given key, or its default value if no file sets
+		 * it or it can not be parsed.
+		 *
+		 * @param key
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> T get(ConfigKey<T> key) {
+			var value = parsed.computeIfAbsent(key, k -> {
+				var raw = values.get(key.getName());
+				if (raw == null)
+					return Optional.empty();
+				try {
+					return Optional.of(key.parse(raw));
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Invalid value " + raw + " of " + key.getName() + ", using "
+							+ key.getDefaultValue());
+					return Optional.empty();
+				}
+			});
+			return value.isPresent() ? (T) value.get() : key.getDefaultValue();
+		}
+
+		/**
+		 * Returns the raw value of the given key, null if no file sets it.
+		 *
+		 * @param key
+		 * @return
+		 */
+		public String getString(String key) {
+			return values.get(key);
+		}
+
+		/**
+		 * Returns all properties, the first file setting a key wins.
+		 *
+		 * @return
+		 */
+		public Map<String, String> getValues() {
+			return values;
+		}
+
+		private Object get(String fileKey, String key, Class<?> clazz) {
+			var value = parsed.computeIfAbsent(List.of(fileKey == null ? "" : fileKey, key, clazz), k -> {
+				var source = fileKey == null ? values : files.getOrDefault(fileKey, Map.of());
+				var raw = source.get(key);
+				if (raw == null)
+					return Optional.empty();
+				try {
+					return Optional.of(convert(raw, clazz));
+				} catch (ReflectiveOperationException | RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Invalid value " + raw + " of " + key + " for " + clazz.getName());
+					return Optional.empty();
+				}
+			});
+			return value.orElse(null);
+		}
+
+		private static Object convert(String value, Class<?> clazz) throws ReflectiveOperationException {
+			if (clazz == String.class || clazz == Object.class)
+				return value;
+			if (clazz == Integer.class)
+				return Integer.valueOf(value.trim());
+			if (clazz == Long.class)
+				return Long.valueOf(value.trim());
+			if (clazz == Boolean.class)
+				return Boolean.valueOf(value.trim());
+			if (clazz == Double.class)
+				return Double.valueOf(value.trim());
+			return clazz.getConstructor(String.class).newInstance(value);
+		}
+
+		@Override
+		public String toString() {
+			return values.entrySet().stream().map(Object::toString).collect(Collectors.joining(", ", "{", "}"));
+		}
+	}
 }